@@ -0,0 +1,170 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Producer/consumer handoff through a single channel. The benchmark thread produces VALUES values while a
+ * dedicated consumer thread drains them, so both ends of the channel are contended for the whole
+ * invocation. Scores are per value moved. BOUNDED_DEQUE is the blocking deque with the ring's capacity,
+ * so the producer also pays for backpressure. Each channel runs under every wait strategy; BLOCK
+ * turns the ring into a bounded deque, as the channel factory does.
+ *
+ * LOOPBACK_SOCKET and UNIX_SOCKET move the values between the two ends of a socket, as between the
+ * processes of HammingNetworkProcessLauncher, so that the framing and the system calls can be set
+ * against an in-heap handoff. A socket ignores the wait strategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelBenchmark {
+
+	static final int VALUES = 1 << 16;
+
+	@Param({"BLOCKING_DEQUE", "BOUNDED_DEQUE", "SPSC_RING", "LOOPBACK_SOCKET", "UNIX_SOCKET"})
+	public String channel;
+
+	@Param({"1", "64", "1024"})
+	public int batchSize;
+
+	@Param({"AUTOMATIC", "SPIN", "SPIN_YIELD", "SPIN_PARK", "BLOCK"})
+	public HammingNetworkWaitStrategy waitStrategy;
+
+	private HammingNetworkChannel producerEnd;
+	private HammingNetworkChannel consumerEnd;
+	private ExecutorService consumer;
+	private long[] producerBatch;
+	private long[] consumerBatch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		if (this.channel.endsWith("_SOCKET")) {
+			final HammingNetworkSocketChannelImpl[] ends = newSocketPair(this.channel, "benchmark");
+			this.producerEnd = ends[0];
+			this.consumerEnd = ends[1];
+		} else {
+			this.producerEnd = this.consumerEnd = newChannel(this.channel, "benchmark", this.waitStrategy);
+		}
+		this.consumer = Executors.newSingleThreadExecutor(new ThreadFactoryWithNamePrefix("ChannelBenchmark"));
+		this.producerBatch = new long[this.batchSize];
+		this.consumerBatch = new long[this.batchSize];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException, InterruptedException {
+		this.consumer.shutdownNow();
+		if (this.producerEnd instanceof HammingNetworkSocketChannelImpl) {
+			((HammingNetworkSocketChannelImpl) this.producerEnd).shutdownOutput();
+			((HammingNetworkSocketChannelImpl) this.consumerEnd).shutdownOutput();
+			((HammingNetworkSocketChannelImpl) this.producerEnd).close();
+			((HammingNetworkSocketChannelImpl) this.consumerEnd).close();
+		}
+	}
+
+
+	/* reference: the single-threaded engine generating the same number of Hamming numbers */
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void sequentialBaseline(final Blackhole blackhole) {
+		new SequentialHammingGenerator(VALUES, HammingNetwork.DEFAULT_PRIMES).generate(blackhole::consume, blackhole::consume);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public long transfer() throws Exception {
+		final Future<Long> sum = this.consumer.submit(() -> drain(VALUES));
+
+		long value = 1;
+		for (int done = 0; done < VALUES; done += this.batchSize) {
+			final int count = Math.min(this.batchSize, VALUES - done);
+			if (count == 1) {
+				this.producerEnd.put(value++);
+			} else {
+				for (int k = 0; k < count; k++) this.producerBatch[k] = value++;
+				this.producerEnd.putAll(this.producerBatch, 0, count);
+			}
+		}
+		return sum.get();
+	}
+
+	private long drain(final int values) throws InterruptedException {
+		long sum = 0;
+		int done = 0;
+		while (done < values) {
+			if (this.batchSize == 1) {
+				sum += this.consumerEnd.take();
+				done++;
+			} else {
+				final int count = this.consumerEnd.drainTo(this.consumerBatch, Math.min(this.batchSize, values - done));
+				for (int k = 0; k < count; k++) sum += this.consumerBatch[k];
+				done += count;
+			}
+		}
+		return sum;
+	}
+
+	static HammingNetworkChannel newChannel(final String kind, final String name,
+			final HammingNetworkWaitStrategy waitStrategy) {
+		switch (kind) {
+		case "BLOCKING_DEQUE":
+			return new HammingNetworkBlockingChannelImpl(name, HammingNetworkChannelFactory.UNBOUNDED, waitStrategy);
+		case "BOUNDED_DEQUE":
+			return new HammingNetworkBlockingChannelImpl(name, HammingNetworkChannelFactory.RING_CAPACITY, waitStrategy);
+		case "SPSC_RING":
+			if (waitStrategy == HammingNetworkWaitStrategy.BLOCK) return newChannel("BOUNDED_DEQUE", name, waitStrategy);
+			return new HammingNetworkSpscRingChannelImpl(name, HammingNetworkChannelFactory.RING_CAPACITY, waitStrategy);
+		default:
+			throw new IllegalArgumentException("Unknown channel " + kind);
+		}
+	}
+
+	/* the two ends of a socket within this process, {producer end, consumer end} */
+	static HammingNetworkSocketChannelImpl[] newSocketPair(final String kind, final String name) throws IOException {
+		final HammingNetworkChannelFactory channels = new HammingNetworkChannelFactory();
+		final Path directory = kind.equals("UNIX_SOCKET") ? Files.createTempDirectory("ChannelBenchmark") : null;
+		try (ServerSocketChannel server = directory != null
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(directory.resolve(name + ".sock")))
+				: ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			final SocketChannel producer = SocketChannel.open(server.getLocalAddress());
+			final SocketChannel consumer = server.accept();
+			return new HammingNetworkSocketChannelImpl[] {
+					channels.getSocketChannelInstance(name, producer), channels.getSocketChannelInstance(name, consumer)};
+		} finally {
+			// a connected socket no longer needs its path
+			if (directory != null) {
+				Files.deleteIfExists(directory.resolve(name + ".sock"));
+				Files.delete(directory);
+			}
+		}
+	}
+}
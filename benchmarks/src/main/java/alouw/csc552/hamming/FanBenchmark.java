@@ -0,0 +1,138 @@
+package alouw.csc552.hamming;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * How the merge and copy nodes scale with the number of primes k. Set up like NodeBenchmark:
+ *
+ *   MERGE: k sorted streams p*i (i = 1..VALUES, p = the first k primes) merged and de-duplicated
+ *   COPY:  1..VALUES copied to k + 1 outputs
+ *
+ * The copy node writes either to one deque per output (DEQUES) or once to a multicast ring that every
+ * output reads (MULTICAST), sized to hold the whole run since the outputs are drained one at a time.
+ * The merge ignores copyOutputs. Scores are per value emitted by the merge and per value
+ * read by the copy node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanBenchmark {
+
+	static final int VALUES = 100_000;
+	private static final long[] PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53};
+
+	@Param({"MERGE", "COPY"})
+	public String node;
+
+	@Param({"3", "5", "10", "16"})
+	public int k;
+
+	@Param({"256"})
+	public int batchSize;
+
+	@Param({"DEQUES", "MULTICAST"})
+	public String copyOutputs;
+
+	private HammingNetworkNode instance;
+	private List<HammingNetworkChannel> outputs;
+	private long expected;
+
+	@Setup(Level.Invocation)
+	public void setUp() throws InterruptedException {
+		final HammingNetworkChannelFactory channels = new HammingNetworkChannelFactory();
+		this.outputs = new ArrayList<>();
+
+		if (this.node.equals("MERGE")) {
+			this.instance = HammingNetworkControlNodeFactory.MERGE_NODE.getInstance(
+					VALUES, this.batchSize, HammingNetworkExecutionMode.PLATFORM_THREADS);
+			for (int p = 0; p < this.k; p++) {
+				final HammingNetworkChannel input = channels.getChannelInstance("times" + PRIMES[p]);
+				for (long i = 1; i <= VALUES; i++) input.put(PRIMES[p] * i);
+				this.instance.addInputChannel(input);
+			}
+			this.outputs.add(channels.getChannelInstance("merged"));
+			this.expected = countMerged(this.k, 2L * VALUES);
+		} else {
+			this.instance = HammingNetworkControlNodeFactory.COLLECT_NODE.getInstance(
+					VALUES, this.batchSize, HammingNetworkExecutionMode.PLATFORM_THREADS);
+			final HammingNetworkChannel input = channels.getChannelInstance("values");
+			for (long i = 1; i <= VALUES; i++) input.put(i);
+			this.instance.addInputChannel(input);
+			// the copy node seeds its input with 1 and copies VALUES values in all, then ends its outputs
+			this.expected = VALUES;
+			if (this.copyOutputs.equals("MULTICAST")) {
+				final HammingNetworkMulticastRingChannelImpl ring = channels.getMulticastChannelInstance(
+						"copy", VALUES + 1, HammingNetworkWaitStrategy.AUTOMATIC);
+				for (int o = 0; o <= this.k; o++) this.outputs.add(ring.newConsumer("copy" + o, HammingNetworkWaitStrategy.AUTOMATIC));
+				this.instance.addOutputChannel(ring);
+				return;
+			}
+			for (int o = 0; o <= this.k; o++) this.outputs.add(channels.getChannelInstance("copy" + o));
+		}
+		for (HammingNetworkChannel output : this.outputs) this.instance.addOutputChannel(output);
+	}
+
+
+	/* reference: the single-threaded engine generating the same number of Hamming numbers */
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void sequentialBaseline(final Blackhole blackhole) {
+		new SequentialHammingGenerator(VALUES, HammingNetwork.DEFAULT_PRIMES).generate(blackhole::consume, blackhole::consume);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public long run() throws InterruptedException {
+		final Thread runner = new Thread(this.instance, this.node);
+		runner.start();
+
+		final long[] batch = new long[this.batchSize];
+		long sum = 0;
+		for (HammingNetworkChannel output : this.outputs) {
+			long done = 0;
+			while (done < this.expected) {
+				final int count = output.drainTo(batch, (int) Math.min(this.batchSize, this.expected - done));
+				for (int c = 0; c < count; c++) sum += batch[c];
+				done += count;
+			}
+		}
+
+		this.instance.shutdown();
+		runner.join();
+		return sum;
+	}
+
+	/* distinct multiples of the first k primes up to max, i.e. what the merge emits before the times2 input runs dry */
+	private static long countMerged(final int k, final long max) {
+		long count = 0;
+		for (long v = 2; v <= max; v++) {
+			for (int p = 0; p < k; p++) {
+				if (v % PRIMES[p] == 0) {
+					count++;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,31 @@
+package alouw.csc552.hamming;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Entry point of the benchmarks jar. Accepts the usual JMH command line, but unless told otherwise
+ * writes the results as JSON to hamming-jmh-<version>.json so runs of different versions can be diffed.
+ *
+ * usage: java -jar benchmarks/target/benchmarks.jar [jmh options] [benchmark regexp]
+ */
+public class HammingBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		final String version = HammingBenchmarks.class.getPackage().getImplementationVersion();
+
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (!commandLine.getResultFormat().hasValue()) options.resultFormat(ResultFormatType.JSON);
+		if (!commandLine.getResult().hasValue()) {
+			options.result("hamming-jmh-" + (version == null ? "dev" : version) + ".json");
+		}
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,63 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Point queries on the lattice: the nth Hamming number and the count up to it, n = 10^3 .. 10^9.
+ * Compare with NetworkBenchmark, which has to generate every earlier number to reach the nth.
+ * range enumerates the numbers ranked n to n + 1000 by their values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatticeBenchmark {
+
+	@Param({"1000", "1000000", "1000000000"})
+	public long n;
+
+	@Param({"2,3,5"})
+	public String primes;
+
+	private HammingLattice lattice;
+	private BigInteger nth;
+	private BigInteger last;
+
+	@Setup
+	public void setUp() {
+		this.lattice = new HammingLattice(HammingGeneratorFactory.parsePrimes(this.primes));
+		this.nth = this.lattice.nth(this.n);
+		this.last = this.lattice.nth(this.n + 1000);
+	}
+
+	@Benchmark
+	public BigInteger nth() {
+		return this.lattice.nth(this.n);
+	}
+
+	@Benchmark
+	public long countUpTo() {
+		return this.lattice.countUpTo(this.nth);
+	}
+
+	@Benchmark
+	public void range(final Blackhole blackhole) {
+		this.lattice.range(this.nth, this.last, blackhole::consume, blackhole::consume);
+	}
+}
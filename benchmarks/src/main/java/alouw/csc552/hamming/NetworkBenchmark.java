@@ -0,0 +1,98 @@
+package alouw.csc552.hamming;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ajeffrey.teaching.io.DevNull;
+
+/*
+ * End-to-end throughput: configure a fresh network, generate the first n Hamming numbers and tear the
+ * network down. Each run is one shot because a network is configured for one run. The sequential
+ * engine runs the same workload as the reference baseline, the pull network runs it on demand from the
+ * print thread, and the parallel engine on the common ForkJoinPool. The fused network is the push
+ * network after operator fusion, so the two compare the same topology with and without a thread and a
+ * channel per multiply node.
+ *
+ * A network can run on platform-thread pools, on virtual threads or on the shared pool, so its score
+ * includes the start-up cost of its execution mode (on the shared pool, the threads outlive a run and
+ * are already warm). The mode does not affect the sequential and parallel engines, whose runs in each
+ * mode are the same run.
+ *
+ * The console sink writes to DevNull, so its score includes formatting the numbers but not the
+ * terminal; the checksum sink takes output out of the picture altogether.
+ *
+ * The defaults compare every engine at two sizes on one execution mode, with the checksum sink, for
+ * topologies of 3 and of 10 primes, so that a plain run finishes in minutes. The full sweep runs with
+ * -p overrides, for example
+ *
+ *   -p n=1000,10000,100000,1000000,10000000 -p mode=PLATFORM_THREADS,VIRTUAL_THREADS,SHARED_THREADS
+ *   -p sink=CONSOLE_SINK,CHECKSUM_SINK
+ *
+ * JMH splits -p values at commas, so other prime sets go in the primes @Param.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NetworkBenchmark {
+
+	@Param({"10000", "1000000"})
+	public long n;
+
+	@Param({"NETWORK_ENGINE", "FUSED_NETWORK_ENGINE", "PULL_NETWORK_ENGINE", "PARALLEL_ENGINE", "SEQUENTIAL_ENGINE"})
+	public HammingGeneratorFactory engine;
+
+	@Param({"256"})
+	public int batchSize;
+
+	@Param({"PLATFORM_THREADS"})
+	public HammingNetworkExecutionMode mode;
+
+	@Param({"2,3,5", "2,3,5,7,11,13,17,19,23,29"})
+	public String primes;
+
+	@Param({"CHECKSUM_SINK"})
+	public HammingNetworkSinkFactory sink;
+
+	private HammingGenerator generator;
+	private PrintStream console;
+
+	@Setup(Level.Trial)
+	public void quiet() {
+		this.console = System.out;
+		System.setOut(DevNull.printStream);
+	}
+
+	@TearDown(Level.Trial)
+	public void restore() {
+		System.setOut(this.console);
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		this.generator = this.engine.getInstance(
+				this.n, 1, TimeUnit.HOURS, this.batchSize, this.mode, HammingGeneratorFactory.parsePrimes(this.primes),
+				this.sink.getInstance(null));
+	}
+
+	@Benchmark
+	public void generate() {
+		this.generator.start();
+	}
+}
@@ -0,0 +1,144 @@
+package alouw.csc552.hamming;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Each node type in isolation. Every invocation builds a fresh node, pre-loads its input channels,
+ * runs the node on its own thread and times how long the benchmark thread takes to drain the expected
+ * output. All channels are unbounded blocking deques so that no node can stall on a full output while
+ * the benchmark drains another one. Scores are per value read from the node's inputs.
+ *
+ *   BARRIER_MERGE / MERGE: the sorted streams 2i, 3i and 5i (i = 1..VALUES) merged and de-duplicated
+ *   COPY:                  1..VALUES copied to four outputs
+ *   MULTIPLY:              1..VALUES multiplied by 5
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+
+	static final int VALUES = 100_000;
+	private static final long[] FACTORS = {2, 3, 5};
+
+	@Param({"BARRIER_MERGE", "MERGE", "COPY", "MULTIPLY"})
+	public String node;
+
+	@Param({"256"})
+	public int batchSize;
+
+	@Param({"PLATFORM_THREADS", "VIRTUAL_THREADS"})
+	public HammingNetworkExecutionMode mode;
+
+	private HammingNetworkNode instance;
+	private List<HammingNetworkChannel> outputs;
+	private long expected;
+
+	@Setup(Level.Invocation)
+	public void setUp() throws InterruptedException {
+		final HammingNetworkChannelFactory channels = new HammingNetworkChannelFactory();
+		this.outputs = new ArrayList<>();
+
+		switch (this.node) {
+		case "BARRIER_MERGE":
+		case "MERGE":
+			this.instance = (this.node.equals("MERGE")
+					? HammingNetworkControlNodeFactory.MERGE_NODE
+					: HammingNetworkControlNodeFactory.BARRIER_MERGE_NODE)
+					.getInstance(VALUES, this.batchSize, this.mode);
+			for (long factor : FACTORS) {
+				final HammingNetworkChannel input = channels.getChannelInstance("times" + factor);
+				for (long i = 1; i <= VALUES; i++) input.put(factor * i);
+				this.instance.addInputChannel(input);
+			}
+			this.outputs.add(channels.getChannelInstance("merged"));
+			this.expected = countMerged(VALUES);
+			break;
+		case "COPY":
+			this.instance = HammingNetworkControlNodeFactory.COLLECT_NODE.getInstance(
+					VALUES, this.batchSize, this.mode);
+			final HammingNetworkChannel input = channels.getChannelInstance("values");
+			for (long i = 1; i <= VALUES; i++) input.put(i);
+			this.instance.addInputChannel(input);
+			for (int o = 0; o < 4; o++) this.outputs.add(channels.getChannelInstance("copy" + o));
+			// the copy node seeds its input with 1 and copies VALUES values in all, then ends its outputs
+			this.expected = VALUES;
+			break;
+		case "MULTIPLY":
+			this.instance = new HammingNetworkWorkerNodeFactory().getInstance(
+					new Procedure() {
+						public long apply(long value) {
+							return Math.multiplyExact(value, 5);
+						}
+
+						public java.math.BigInteger apply(java.math.BigInteger value) {
+							return value.multiply(java.math.BigInteger.valueOf(5));
+						}
+					}, "times5", this.batchSize, this.mode);
+			final HammingNetworkChannel values = channels.getChannelInstance("values");
+			for (long i = 1; i <= VALUES; i++) values.put(i);
+			this.instance.addInputChannel(values);
+			this.outputs.add(channels.getChannelInstance("times5"));
+			this.expected = VALUES;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown node " + this.node);
+		}
+		for (HammingNetworkChannel output : this.outputs) this.instance.addOutputChannel(output);
+	}
+
+
+	/* reference: the single-threaded engine generating the same number of Hamming numbers */
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void sequentialBaseline(final Blackhole blackhole) {
+		new SequentialHammingGenerator(VALUES, HammingNetwork.DEFAULT_PRIMES).generate(blackhole::consume, blackhole::consume);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public long run() throws InterruptedException {
+		final Thread runner = new Thread(this.instance, this.node);
+		runner.start();
+
+		final long[] batch = new long[this.batchSize];
+		long sum = 0;
+		for (HammingNetworkChannel output : this.outputs) {
+			long done = 0;
+			while (done < this.expected) {
+				final int count = output.drainTo(batch, (int) Math.min(this.batchSize, this.expected - done));
+				for (int k = 0; k < count; k++) sum += batch[k];
+				done += count;
+			}
+		}
+
+		this.instance.shutdown();
+		runner.join();
+		return sum;
+	}
+
+	/* the merge can emit every distinct multiple of 2, 3 or 5 up to 2n before the times2 input runs dry */
+	static long countMerged(final long n) {
+		final long max = 2 * n;
+		return max / 2 + max / 3 + max / 5 - max / 6 - max / 10 - max / 15 + max / 30;
+	}
+}
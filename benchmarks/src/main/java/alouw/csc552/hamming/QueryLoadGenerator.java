@@ -0,0 +1,148 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Closed-loop load against a running HammingQueryServer: every client thread sends one request, waits
+ * for the response and sends the next, for the given number of seconds after a warm-up of the same
+ * length. Prints the requests per second and the latency percentiles of the measured requests.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar alouw.csc552.hamming.QueryLoadGenerator
+ *        [port | socket path] [clients] [seconds] [mix] [numbers] [primes]
+ *
+ * mix is a comma-separated list of NTH, COUNT, PREFIX and RANGE, drawn from uniformly; numbers is the
+ * size of the prefix the queries fall in (PREFIX asks for up to 100 numbers, RANGE spans up to 100).
+ * The queries are drawn from a local copy of that prefix, so the client does not need the server to
+ * pick them.
+ */
+public class QueryLoadGenerator {
+
+	private static final int SPAN = 100;
+
+	public static void main(final String[] args) throws Exception {
+		final String where = args.length > 0 ? args[0] : String.valueOf(HammingQueryServer.DEFAULT_PORT);
+		final int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		final String mix = args.length > 3 ? args[3] : "NTH,COUNT,PREFIX,RANGE";
+		final long numbers = args.length > 4 ? Long.parseLong(args[4]) : 1L << 16;
+		final List<Long> primes = args.length > 5 ? HammingGeneratorFactory.parsePrimes(args[5]) : HammingNetwork.DEFAULT_PRIMES;
+
+		final SocketAddress address = where.chars().allMatch(Character::isDigit)
+				? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(where))
+				: UnixDomainSocketAddress.of(Paths.get(where));
+		final byte[] ops = parseMix(mix);
+		final long[] sequence = new HammingSequence(numbers, primes).stream().parallel().toArray();
+
+		System.out.println("Warming up for " + seconds + " Seconds");
+		run(address, clients, seconds, ops, sequence);
+		System.out.println("Measuring for " + seconds + " Seconds");
+		final long start = System.nanoTime();
+		final long[] latencies = run(address, clients, seconds, ops, sequence);
+		final double elapsed = (System.nanoTime() - start) / 1e9;
+
+		Arrays.sort(latencies);
+		System.out.println("Clients: " + clients + ", mix: " + mix + ", requests: " + latencies.length);
+		System.out.printf("Throughput: %.0f requests/s%n", latencies.length / elapsed);
+		System.out.printf("Latency (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+				percentile(latencies, 0.5) / 1e3, percentile(latencies, 0.99) / 1e3,
+				percentile(latencies, 0.999) / 1e3, percentile(latencies, 1) / 1e3);
+	}
+
+	/* run the clients for seconds and return the latency of every request, in nanoseconds */
+	private static long[] run(final SocketAddress address, final int clients, final int seconds, final byte[] ops,
+			final long[] sequence) throws InterruptedException, ExecutionException {
+		final ExecutorService pool = Executors.newFixedThreadPool(clients, new ThreadFactoryWithNamePrefix("QueryLoadGenerator"));
+		final long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+		try {
+			final List<Future<long[]>> results = new ArrayList<>();
+			for (int c = 0; c < clients; c++) {
+				final long seed = c;
+				results.add(pool.submit(() -> client(address, deadline, ops, sequence, new SplittableRandom(seed))));
+			}
+			long[] latencies = new long[0];
+			for (Future<long[]> result : results) {
+				final long[] client = result.get();
+				final int from = latencies.length;
+				latencies = Arrays.copyOf(latencies, from + client.length);
+				System.arraycopy(client, 0, latencies, from, client.length);
+			}
+			return latencies;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static long[] client(final SocketAddress address, final long deadline, final byte[] ops,
+			final long[] sequence, final SplittableRandom random) {
+		long[] latencies = new long[1024];
+		int count = 0;
+		try (HammingQueryClient client = new HammingQueryClient(address)) {
+			for (long now = System.nanoTime(); now < deadline;) {
+				final byte op = ops[random.nextInt(ops.length)];
+				final int rank = random.nextInt(sequence.length);
+				final int span = random.nextInt(SPAN) + 1;
+				final long a, b;
+				switch (op) {
+				case HammingQueryServer.NTH:
+					a = rank + 1;
+					b = 0;
+					break;
+				case HammingQueryServer.COUNT:
+					a = sequence[rank];
+					b = 0;
+					break;
+				case HammingQueryServer.PREFIX:
+					a = Math.min(span, sequence.length);
+					b = 0;
+					break;
+				default:
+					a = sequence[rank];
+					b = sequence[Math.min(rank + span, sequence.length - 1)];
+				}
+				client.query(op, a, b);
+				final long done = System.nanoTime();
+				if (count == latencies.length) latencies = Arrays.copyOf(latencies, 2 * count);
+				latencies[count++] = done - now;
+				now = done;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Arrays.copyOf(latencies, count);
+	}
+
+	private static byte[] parseMix(final String mix) {
+		final String[] names = mix.split(",");
+		final byte[] ops = new byte[names.length];
+		for (int o = 0; o < names.length; o++) {
+			switch (names[o].trim().toUpperCase()) {
+			case "NTH": ops[o] = HammingQueryServer.NTH; break;
+			case "COUNT": ops[o] = HammingQueryServer.COUNT; break;
+			case "PREFIX": ops[o] = HammingQueryServer.PREFIX; break;
+			case "RANGE": ops[o] = HammingQueryServer.RANGE; break;
+			default: throw new IllegalArgumentException("Unknown query " + names[o]);
+			}
+		}
+		return ops;
+	}
+
+	/* the latency below which the given fraction of the sorted latencies fall */
+	private static long percentile(final long[] sorted, final double fraction) {
+		if (sorted.length == 0) return 0;
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+	}
+}
@@ -5,15 +5,24 @@ import java.io.OutputStream;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 import ajeffrey.teaching.io.DevNull;
 
 /**
  * An inferface for printing debugging messages.
+ * <p>
+ * Messages are printed asynchronously: the calling thread only
+ * records a message, and a background thread formats and prints it.
+ * A message given as a <code>Supplier</code> is not formatted at all
+ * unless there is somewhere to print it.
  * @author Alan Jeffrey
- * @version 1.0.5
+ * @version 1.1.0
  */
 public interface Debug extends DebugStream {
 
@@ -23,7 +32,7 @@ public interface Debug extends DebugStream {
      * thread identifiers, to keep track of safety errors
      * caused by concurrent programming.
      */
-    public static final Debug out = new DebugImpl ();
+    public static final Debug out = new AsyncDebugImpl ();
 
     /**
      * Adds a new debug factory.
@@ -66,6 +75,14 @@ public interface Debug extends DebugStream {
      */
     public void println (String msg);
 
+    /**
+     * Prints a debugging message, formatted lazily.
+     * The supplier is called later, by another thread, so it
+     * should only capture values which do not change.
+     * @param msg the message to print
+     */
+    public void println (Supplier<String> msg);
+
     /**
      * Prints a debugging message, and adds a break point
      * where execution may pause (if using a step debugger).
@@ -75,6 +92,15 @@ public interface Debug extends DebugStream {
      */
     public void breakPoint (String msg);
 
+    /**
+     * Prints a debugging message, formatted lazily, and adds
+     * a break point (see breakPoint (String)).
+     * The supplier is called later, by another thread, so it
+     * should only capture values which do not change.
+     * @param msg the message to print
+     */
+    public void breakPoint (Supplier<String> msg);
+
     /**
      * Makes an assertion.
      * If the assertion is false, we add a break point.
@@ -82,13 +108,42 @@ public interface Debug extends DebugStream {
      */
     public void assertion (boolean assertion);
 
+    /**
+     * Waits until every message printed so far has
+     * been handed to the debug streams.
+     */
+    public void flush ();
+
 }
 
-class DebugImpl implements Debug {
+/**
+ * The debugging output stream.
+ * <p>
+ * Each thread records its messages in its own ring buffer, found
+ * through a ThreadLocal, so printing a message takes no lock and
+ * touches no data shared with other printing threads. A single
+ * writer thread drains the rings of all threads, prints their
+ * messages in the order they were recorded, and only then formats
+ * the messages given as suppliers. If a ring is full, its thread
+ * drops the message and counts it rather than wait for the writer;
+ * the count is printed with the thread's next message.
+ * <p>
+ * The writer is a daemon thread, started with the first message; a
+ * shutdown hook prints whatever is left when the JVM exits.
+ */
+class AsyncDebugImpl implements Debug {
+
+    static final long IDLE_NANOS = 1000000L;
 
     final protected Object lock = new Object ();
-    final protected HashMap perThread = new HashMap ();
-    protected DebugStreamFactory[] factories = new DebugStreamFactory[0];
+    final protected CopyOnWriteArrayList<TraceRing> rings = new CopyOnWriteArrayList<TraceRing> ();
+    final protected ThreadLocal<TraceRing> ring = new ThreadLocal<TraceRing> () {
+	protected TraceRing initialValue () {
+	    return newRing ();
+	}
+    };
+    protected volatile DebugStreamFactory[] factories = new DebugStreamFactory[0];
+    protected Thread writer;
 
     public void addFactory (final DebugStreamFactory factory) {
 	synchronized (lock) {
@@ -97,11 +152,7 @@ class DebugImpl implements Debug {
 	    System.arraycopy (factories, 0, newFactories, 0, factories.length);
 	    newFactories[factories.length] = factory;
 	    factories = newFactories;
-	    for (final Iterator i = perThread.values ().iterator (); i.hasNext ();) {
-	        PerThread next = (PerThread)(i.next ());
-		next.setFactories (factories);
-	    }
-	}	
+	}
     }
 
     public void addPrintStream (final PrintStream out) {
@@ -119,28 +170,21 @@ class DebugImpl implements Debug {
     public void setPrintStream (final PrintStream out) {
 	addPrintStream (out);
     }
-    
-    protected PerThread getPerThread () {
-	final Thread current = Thread.currentThread ();
-	PerThread result = (PerThread)(perThread.get (current));
-	if (result == null) {
-	    synchronized (lock) {
-		result = (PerThread)(perThread.get (current));
-		if (result == null) {
-		    result = new PerThread (factories);
-		    perThread.put (current, result);
-		}
-	    }
-	}
-	return result;
-    }
 
     public void println (final String msg) {
-	getPerThread ().println (msg);
+	record (msg, false);
+    }
+
+    public void println (final Supplier<String> msg) {
+	record (msg, false);
     }
 
     public void breakPoint (final String msg) {
-	getPerThread ().breakPoint (msg);
+	record (msg, true);
+    }
+
+    public void breakPoint (final Supplier<String> msg) {
+	record (msg, true);
     }
 
     public void assertion (final boolean assertion) {
@@ -149,62 +193,223 @@ class DebugImpl implements Debug {
 	}
     }
 
+    public void flush () {
+	final Thread current = writer ();
+	if (current == null || current == Thread.currentThread ()) { return; }
+	final TraceRing[] pending = rings.toArray (new TraceRing[0]);
+	final long[] tails = new long[pending.length];
+	for (int i=0; i < pending.length; i++) { tails[i] = pending[i].tail; }
+	for (int i=0; i < pending.length; i++) {
+	    while ((pending[i].head < tails[i] || pending[i].reportedDropped < pending[i].dropped)
+		   && current.isAlive ()) {
+		LockSupport.unpark (current);
+		LockSupport.parkNanos (IDLE_NANOS);
+	    }
+	}
+    }
+
+    /* a message is dropped straight away if there is nowhere to print it */
+    protected void record (final Object msg, final boolean breakPoint) {
+	if (factories.length == 0) { return; }
+	ring.get ().offer (msg, breakPoint);
+    }
+
+    protected TraceRing newRing () {
+	final TraceRing result = new TraceRing (Thread.currentThread ());
+	rings.add (result);
+	synchronized (lock) {
+	    if (writer == null) {
+		writer = new Thread (new Runnable () {
+		    public void run () { write (); }
+		}, "AsyncDebug-writer");
+		writer.setDaemon (true);
+		writer.start ();
+		Runtime.getRuntime ().addShutdownHook (new Thread (new Runnable () {
+		    public void run () { flush (); }
+		}, "AsyncDebug-flush"));
+	    }
+	}
+	return result;
+    }
+
+    protected Thread writer () {
+	synchronized (lock) {
+	    return writer;
+	}
+    }
+
+    /* the writer loop: drain every ring, print in recording order, park while idle */
+    protected void write () {
+	TraceEvent[] events = new TraceEvent[0];
+	for (;;) {
+	    int count = 0;
+	    for (final TraceRing next : rings) {
+		final long tail = next.tail;
+		if (count + (int)(tail - next.head) > events.length) {
+		    events = Arrays.copyOf (events, Math.max (2 * events.length, count + (int)(tail - next.head)));
+		}
+		for (long seq = next.head; seq < tail; seq++) {
+		    events[count] = next.event (seq, events[count]);
+		    count++;
+		}
+		if (tail == next.head) {
+		    next.reportDropped (factories);
+		    if (!next.thread.isAlive ()) { rings.remove (next); }
+		}
+	    }
+	    if (count == 0) {
+		LockSupport.parkNanos (IDLE_NANOS);
+		continue;
+	    }
+	    Arrays.sort (events, 0, count, TraceEvent.BY_TIME);
+	    final DebugStreamFactory[] current = factories;
+	    for (int i=0; i < count; i++) {
+		events[i].ring.print (events[i], current);
+	    }
+	    for (int i=0; i < count; i++) {
+		events[i].ring.release (events[i].seq);
+		events[i].msg = null;
+	    }
+	}
+    }
+
 }
 
-class PerThread {
+/**
+ * A single-producer, single-consumer ring buffer of debugging messages.
+ * Only the owning thread writes <code>tail</code> and the dropped count,
+ * and only the writer thread writes <code>head</code> and the streams;
+ * each side publishes its index with an ordered store after touching
+ * the slots.
+ */
+class TraceRing {
+
+    static final int SIZE = 4096;
+    static final int MASK = SIZE - 1;
+
+    static final AtomicLongFieldUpdater<TraceRing> HEAD =
+	AtomicLongFieldUpdater.newUpdater (TraceRing.class, "head");
+    static final AtomicLongFieldUpdater<TraceRing> TAIL =
+	AtomicLongFieldUpdater.newUpdater (TraceRing.class, "tail");
+    static final AtomicLongFieldUpdater<TraceRing> DROPPED =
+	AtomicLongFieldUpdater.newUpdater (TraceRing.class, "dropped");
 
     static int threadId = 0;
     static synchronized int newThreadId () { return ++threadId; }
 
+    protected final Thread thread;
     protected final String threadName = "Thread " + newThreadId ();
+    protected final long[] times = new long[SIZE];
+    protected final Object[] messages = new Object[SIZE];
+    protected final boolean[] breakPoints = new boolean[SIZE];
+
+    protected volatile long head;
+    protected volatile long tail;
+    protected volatile long dropped;
+    protected long cachedHead;
+
     protected DebugStream[] streams = new DebugStream[0];
-    protected DebugStreamFactory[] factories;
-    protected boolean printing = true;
+    protected volatile long reportedDropped;
 
-    protected PerThread (final DebugStreamFactory[] factories) {
-	this.factories = factories;
+    protected TraceRing (final Thread thread) {
+	this.thread = thread;
     }
 
-    protected void setFactories (final DebugStreamFactory[] factories) {
-	this.factories = factories;
+    /* called by the owning thread */
+    protected void offer (final Object msg, final boolean breakPoint) {
+	final long t = tail;
+	if (t - cachedHead == SIZE && t - (cachedHead = head) == SIZE) {
+	    DROPPED.lazySet (this, dropped + 1);
+	    return;
+	}
+	final int i = (int)(t & MASK);
+	times[i] = System.nanoTime ();
+	messages[i] = msg;
+	breakPoints[i] = breakPoint;
+	TAIL.lazySet (this, t + 1);
     }
 
-    protected void buildStreams () {
+    /* called by the writer thread; reuses result if there is one */
+    protected TraceEvent event (final long seq, final TraceEvent result) {
+	final TraceEvent event = (result == null) ? new TraceEvent () : result;
+	final int i = (int)(seq & MASK);
+	event.ring = this;
+	event.seq = seq;
+	event.time = times[i];
+	event.msg = messages[i];
+	event.breakPoint = breakPoints[i];
+	return event;
+    }
+
+    /* called by the writer thread once the event at seq is printed */
+    protected void release (final long seq) {
+	messages[(int)(seq & MASK)] = null;
+	HEAD.lazySet (this, seq + 1);
+    }
+
+    /* called by the writer thread */
+    protected void print (final TraceEvent event, final DebugStreamFactory[] factories) {
+	reportDropped (factories);
+	final String msg = format (event.msg);
+	for (int i=0; i < streams.length; i++) {
+	    if (event.breakPoint) {
+		streams[i].breakPoint (msg);
+	    } else {
+		streams[i].println (msg);
+	    }
+	}
+    }
+
+    /* called by the writer thread */
+    protected void reportDropped (final DebugStreamFactory[] factories) {
 	if (streams.length < factories.length) {
-	    final boolean currentPrinting =
-		printing;
 	    final DebugStream[] newStreams = 
 		new DebugStream [factories.length];
-	    printing = false;
 	    System.arraycopy (streams, 0, newStreams, 0, streams.length);
 	    for (int i=streams.length; i < factories.length; i++) {
 		newStreams[i] = factories[i].build (threadName);
 	    }
 	    streams = newStreams;
-	    printing = currentPrinting;		
 	}
-    }
-
-    public void println (final String msg) {
-	if (printing) {
-	    buildStreams ();
+	final long lost = dropped;
+	if (lost > reportedDropped) {
 	    for (int i=0; i < streams.length; i++) {
-		streams[i].println (msg);
+		streams[i].println ("(" + (lost - reportedDropped) + " messages dropped)");
 	    }
+	    reportedDropped = lost;
 	}
     }
 
-    public void breakPoint (final String msg) {
-	if (printing) {
-	    buildStreams ();
-	    for (int i=0; i < streams.length; i++) {
-		streams[i].breakPoint (msg);
-	    }
+    protected static String format (final Object msg) {
+	if (!(msg instanceof Supplier)) { return (String)msg; }
+	try {
+	    return String.valueOf (((Supplier<?>)msg).get ());
+	} catch (final RuntimeException e) {
+	    return "(message failed: " + e + ")";
 	}
     }
 
 }
 
+/**
+ * A message copied out of a ring by the writer thread.
+ */
+class TraceEvent {
+
+    static final Comparator<TraceEvent> BY_TIME = new Comparator<TraceEvent> () {
+	public int compare (final TraceEvent a, final TraceEvent b) {
+	    return Long.compare (a.time - b.time, 0);
+	}
+    };
+
+    TraceRing ring;
+    long seq;
+    long time;
+    Object msg;
+    boolean breakPoint;
+
+}
+
 class PrintDebugStreamFactory implements DebugStreamFactory {
     
     final PrintStream out;
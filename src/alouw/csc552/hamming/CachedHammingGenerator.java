@@ -0,0 +1,386 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A generator backed by a memory-mapped file of the numbers generated so far, so that a run only pays
+ * for the numbers no earlier run produced.
+ *
+ * A request for at most as many numbers as the file holds is answered straight from the mapping. A
+ * larger request replays the file and then extends it: the file header records where the index of
+ * each prime points into the sequence, so the single-threaded algorithm of SequentialHammingGenerator
+ * carries on from the cached tail, appending to the file as it writes to the sink.
+ *
+ * File layout (little-endian): a HEADER_SIZE header, then the numbers in the BINARY_FILE_SINK format -
+ * fixed-width longs, then once past the 64-bit range an OVERFLOW marker followed by a byte count and
+ * the bytes of each number, least significant first.
+ *
+ *   0  magic            8  version         12  number of primes
+ *   16 count           24  end of the numbers (file offset)
+ *   32 offset of the first number past the 64-bit range, or NO_OVERFLOW
+ *   40 the primes, then the index of each prime's pointer, then each pointer's file offset
+ *
+ * Thread safety policy: the file is shared between JVMs with file locks. A run that can be answered
+ * from the file holds a shared lock, so any number of JVMs read it at once; a run that has to extend
+ * it holds an exclusive lock. Numbers are only ever appended and the count is written last, so the
+ * header always describes a complete prefix. File locks belong to the JVM, so within one JVM only one
+ * generator at a time may use a given file.
+ */
+public class CachedHammingGenerator implements HammingGenerator {
+
+	static final long MAGIC = 0x48414d4d53455131L;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4096;
+	static final int MAX_PRIMES = (HEADER_SIZE - 40) / (3 * Long.BYTES);
+	static final long NO_OVERFLOW = Long.MAX_VALUE;
+
+	private static final int MAGIC_AT = 0, VERSION_AT = 8, PRIMES_AT = 12, COUNT_AT = 16, END_AT = 24, BIG_AT = 32;
+	private static final int PRIME_AT = 40;
+	private static final int REPLAY_BATCH = 1024;
+	private static final long CHECKPOINT_NUMBERS = 1L << 20;
+
+	private final Path path;
+	private final long maxNumbers;
+	private final long[] primes;
+	private final HammingNetworkSink sink;
+
+	/* start writes the first threshold numbers to sink and closes it */
+	public CachedHammingGenerator(final Path path, final long threshold, final List<Long> primes,
+			final HammingNetworkSink sink) {
+		HammingGeneratorFactory.checkPrimes(primes);
+		if (primes.size() > MAX_PRIMES) throw new IllegalArgumentException("At most " + MAX_PRIMES + " primes can be cached");
+		this.path = path;
+		this.maxNumbers = threshold;
+		this.primes = new long[primes.size()];
+		for (int p = 0; p < this.primes.length; p++) this.primes[p] = primes.get(p).longValue();
+		Arrays.sort(this.primes);
+		this.sink = sink;
+	}
+
+	/* the default cache file for a set of primes, in the temporary directory */
+	public static Path cacheFile(final List<Long> primes) {
+		final long[] sorted = new long[primes.size()];
+		for (int p = 0; p < sorted.length; p++) sorted[p] = primes.get(p).longValue();
+		Arrays.sort(sorted);
+		final StringBuilder name = new StringBuilder("hamming");
+		for (long prime : sorted) name.append('-').append(prime);
+		return Paths.get(System.getProperty("java.io.tmpdir"), name.append(".cache").toString());
+	}
+
+	@Override
+	public void start() {
+		try {
+			try (FileChannel channel = FileChannel.open(this.path,
+					StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+				generate(channel);
+			} finally {
+				this.sink.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void generate(final FileChannel channel) throws IOException {
+		final FileLock shared = channel.lock(0, Long.MAX_VALUE, true);
+		try {
+			final MappedSequenceFile file = new MappedSequenceFile(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+			if (channel.size() >= HEADER_SIZE && matches(file) && file.getLong(COUNT_AT) >= this.maxNumbers) {
+				replay(file, this.maxNumbers);
+				return;
+			}
+		} finally {
+			shared.release();
+		}
+
+		// another JVM may have extended the file between the two locks, so read the header again
+		final FileLock exclusive = channel.lock();
+		try {
+			final MappedSequenceFile file = new MappedSequenceFile(channel, FileChannel.MapMode.READ_WRITE, size(this.maxNumbers));
+			if (channel.size() < HEADER_SIZE || !matches(file)) initialise(file);
+			final long count = file.getLong(COUNT_AT);
+			replay(file, Math.min(count, this.maxNumbers));
+			if (count < this.maxNumbers) extend(file, count);
+		} finally {
+			exclusive.release();
+		}
+	}
+
+	/* the file size that holds count numbers, all of them in the 64-bit range */
+	private static long size(final long count) {
+		if (count >= (Long.MAX_VALUE - HEADER_SIZE) / Long.BYTES - 1) return Long.MAX_VALUE;
+		return HEADER_SIZE + (count + 1) * Long.BYTES;
+	}
+
+	private boolean matches(final MappedSequenceFile file) throws IOException {
+		if (file.getLong(MAGIC_AT) != MAGIC || file.getInt(VERSION_AT) != VERSION) return false;
+		if (file.getInt(PRIMES_AT) != this.primes.length) return false;
+		for (int p = 0; p < this.primes.length; p++) {
+			if (file.getLong(PRIME_AT + p * Long.BYTES) != this.primes[p]) return false;
+		}
+		return true;
+	}
+
+	/* a file holding just the first number, 1, with every pointer on it */
+	private void initialise(final MappedSequenceFile file) throws IOException {
+		final int k = this.primes.length;
+		file.putLong(HEADER_SIZE, 1);
+		file.putLong(MAGIC_AT, MAGIC);
+		file.putInt(VERSION_AT, VERSION);
+		file.putInt(PRIMES_AT, k);
+		for (int p = 0; p < k; p++) file.putLong(PRIME_AT + p * Long.BYTES, this.primes[p]);
+		writeState(file, new long[k], filled(k, HEADER_SIZE), HEADER_SIZE + Long.BYTES, NO_OVERFLOW, 1);
+	}
+
+	/* write the first count numbers in the file to the sink */
+	private void replay(final MappedSequenceFile file, final long count) throws IOException {
+		final long bigStart = file.getLong(BIG_AT);
+		final long[] batch = new long[REPLAY_BATCH];
+		long offset = HEADER_SIZE;
+		long done = 0;
+
+		while (done < count && offset < bigStart - Long.BYTES) {
+			final int length = (int) Math.min(batch.length, Math.min(count - done, (bigStart - Long.BYTES - offset) / Long.BYTES));
+			for (int k = 0; k < length; k++, offset += Long.BYTES) batch[k] = file.getLong(offset);
+			this.sink.writeAll(batch, 0, length);
+			done += length;
+		}
+
+		for (offset = bigStart; done < count; done++) {
+			final BigInteger value = file.getBig(offset);
+			this.sink.write(value);
+			offset = file.nextBig(offset);
+		}
+	}
+
+	/* generate numbers count + 1 .. maxNumbers from the pointers in the header, appending to the file */
+	private void extend(final MappedSequenceFile file, long count) throws IOException {
+		final int k = this.primes.length;
+		final long pointersAt = PRIME_AT + (long) k * Long.BYTES;
+		final long[] index = new long[k], offset = new long[k];
+		for (int p = 0; p < k; p++) {
+			index[p] = file.getLong(pointersAt + p * Long.BYTES);
+			offset[p] = file.getLong(pointersAt + (k + p) * Long.BYTES);
+		}
+		long end = file.getLong(END_AT);
+		long bigStart = file.getLong(BIG_AT);
+
+		// candidates[p] is the product at pointer p, or OVERFLOW with the product in bigCandidates[p]
+		final long[] candidates = new long[k];
+		final BigInteger[] bigCandidates = new BigInteger[k];
+		for (int p = 0; p < k; p++) candidate(file, p, offset[p], bigStart, candidates, bigCandidates);
+
+		while (count < this.maxNumbers) {
+			long min = HammingNetworkLongChannel.OVERFLOW;
+			for (int p = 0; p < k; p++) if (candidates[p] < min) min = candidates[p];
+
+			if (min != HammingNetworkLongChannel.OVERFLOW) {
+				file.putLong(end, min);
+				end += Long.BYTES;
+				this.sink.write(min);
+
+				for (int p = 0; p < k; p++) {
+					if (candidates[p] == min) {
+						index[p]++;
+						offset[p] = next(file, offset[p], bigStart);
+						candidate(file, p, offset[p], bigStart, candidates, bigCandidates);
+					}
+				}
+			} else {
+				BigInteger bigMin = null;
+				for (int p = 0; p < k; p++) {
+					if (bigMin == null || bigCandidates[p].compareTo(bigMin) < 0) bigMin = bigCandidates[p];
+				}
+				if (bigStart == NO_OVERFLOW) {
+					file.putLong(end, HammingNetworkLongChannel.OVERFLOW);
+					end += Long.BYTES;
+					bigStart = end;
+				}
+				end = file.putBig(end, bigMin);
+				this.sink.write(bigMin);
+
+				for (int p = 0; p < k; p++) {
+					if (bigCandidates[p].equals(bigMin)) {
+						index[p]++;
+						offset[p] = next(file, offset[p], bigStart);
+						candidate(file, p, offset[p], bigStart, candidates, bigCandidates);
+					}
+				}
+			}
+
+			if (++count % CHECKPOINT_NUMBERS == 0) writeState(file, index, offset, end, bigStart, count);
+		}
+
+		writeState(file, index, offset, end, bigStart, count);
+	}
+
+	private void candidate(final MappedSequenceFile file, final int p, final long offset, final long bigStart,
+			final long[] candidates, final BigInteger[] bigCandidates) throws IOException {
+		final BigInteger prime = BigInteger.valueOf(this.primes[p]);
+		if (offset < bigStart) {
+			final long value = file.getLong(offset);
+			try {
+				candidates[p] = Math.multiplyExact(value, this.primes[p]);
+				// a product may land on the OVERFLOW sentinel itself; keep it in the BigInteger domain
+				if (candidates[p] != HammingNetworkLongChannel.OVERFLOW) return;
+			} catch (ArithmeticException e) {
+				candidates[p] = HammingNetworkLongChannel.OVERFLOW;
+			}
+			bigCandidates[p] = BigInteger.valueOf(value).multiply(prime);
+		} else {
+			candidates[p] = HammingNetworkLongChannel.OVERFLOW;
+			bigCandidates[p] = file.getBig(offset).multiply(prime);
+		}
+	}
+
+	/* the offset of the number after the one at offset, stepping over the OVERFLOW marker */
+	private static long next(final MappedSequenceFile file, final long offset, final long bigStart) throws IOException {
+		if (offset >= bigStart) return file.nextBig(offset);
+		final long next = offset + Long.BYTES;
+		return next == bigStart - Long.BYTES ? bigStart : next;
+	}
+
+	/* the count is written last: a reader that sees it sees everything it covers */
+	private void writeState(final MappedSequenceFile file, final long[] index, final long[] offset, final long end,
+			final long bigStart, final long count) throws IOException {
+		final int k = this.primes.length;
+		final long pointersAt = PRIME_AT + (long) k * Long.BYTES;
+		for (int p = 0; p < k; p++) {
+			file.putLong(pointersAt + p * Long.BYTES, index[p]);
+			file.putLong(pointersAt + (k + p) * Long.BYTES, offset[p]);
+		}
+		file.putLong(BIG_AT, bigStart);
+		file.putLong(END_AT, end);
+		file.putLong(COUNT_AT, count);
+	}
+
+	private static long[] filled(final int length, final long value) {
+		final long[] array = new long[length];
+		Arrays.fill(array, value);
+		return array;
+	}
+}
+
+/*
+ * A file mapped in fixed-size windows, since a single mapping is limited to 2 GiB. A window is mapped
+ * on first use; values that straddle two windows are read and written a byte at a time. A read-only
+ * window stops at the end of the file. A read-write window covers the expected size of the file, and
+ * is mapped again at twice its size when a write goes past it: mapping past the end grows the file, so
+ * the file only grows as far as it is used.
+ */
+class MappedSequenceFile {
+
+	private static final int WINDOW_SHIFT = 26;
+	private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+	private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+	private final FileChannel channel;
+	private final FileChannel.MapMode mode;
+	private final long expectedSize;
+	private MappedByteBuffer[] windows = new MappedByteBuffer[0];
+
+	/* expectedSize is how far into the file a read-write mapping reaches at first */
+	MappedSequenceFile(final FileChannel channel, final FileChannel.MapMode mode, final long expectedSize) {
+		this.channel = channel;
+		this.mode = mode;
+		this.expectedSize = expectedSize;
+	}
+
+	long getLong(final long position) throws IOException {
+		final MappedByteBuffer window = window(position);
+		final int at = (int) (position & WINDOW_MASK);
+		if (at + Long.BYTES <= window.limit()) return window.getLong(at);
+		long value = 0;
+		for (int b = Long.BYTES - 1; b >= 0; b--) value = (value << 8) | (getByte(position + b) & 0xff);
+		return value;
+	}
+
+	int getInt(final long position) throws IOException {
+		final MappedByteBuffer window = window(position);
+		final int at = (int) (position & WINDOW_MASK);
+		if (at + Integer.BYTES <= window.limit()) return window.getInt(at);
+		int value = 0;
+		for (int b = Integer.BYTES - 1; b >= 0; b--) value = (value << 8) | (getByte(position + b) & 0xff);
+		return value;
+	}
+
+	void putLong(final long position, final long value) throws IOException {
+		final MappedByteBuffer window = window(position);
+		final int at = (int) (position & WINDOW_MASK);
+		if (at + Long.BYTES <= window.limit()) {
+			window.putLong(at, value);
+		} else {
+			for (int b = 0; b < Long.BYTES; b++) putByte(position + b, (byte) (value >>> (8 * b)));
+		}
+	}
+
+	void putInt(final long position, final int value) throws IOException {
+		final MappedByteBuffer window = window(position);
+		final int at = (int) (position & WINDOW_MASK);
+		if (at + Integer.BYTES <= window.limit()) {
+			window.putInt(at, value);
+		} else {
+			for (int b = 0; b < Integer.BYTES; b++) putByte(position + b, (byte) (value >>> (8 * b)));
+		}
+	}
+
+	/* a number past the 64-bit range: a byte count, then its bytes least significant first */
+	BigInteger getBig(final long position) throws IOException {
+		final byte[] bytes = new byte[getInt(position)];
+		for (int b = 0; b < bytes.length; b++) bytes[bytes.length - 1 - b] = getByte(position + Integer.BYTES + b);
+		return new BigInteger(bytes);
+	}
+
+	long nextBig(final long position) throws IOException {
+		return position + Integer.BYTES + getInt(position);
+	}
+
+	/* write value at position and return the position after it */
+	long putBig(final long position, final BigInteger value) throws IOException {
+		final byte[] bytes = value.toByteArray();
+		putInt(position, bytes.length);
+		for (int b = 0; b < bytes.length; b++) putByte(position + Integer.BYTES + b, bytes[bytes.length - 1 - b]);
+		return position + Integer.BYTES + bytes.length;
+	}
+
+	private byte getByte(final long position) throws IOException {
+		return window(position).get((int) (position & WINDOW_MASK));
+	}
+
+	private void putByte(final long position, final byte value) throws IOException {
+		window(position).put((int) (position & WINDOW_MASK), value);
+	}
+
+	private MappedByteBuffer window(final long position) throws IOException {
+		final int w = (int) (position >>> WINDOW_SHIFT);
+		if (w >= this.windows.length) this.windows = Arrays.copyOf(this.windows, w + 1);
+		final MappedByteBuffer window = this.windows[w];
+		final long at = position & WINDOW_MASK;
+		if (window != null && (at < window.limit() || this.mode != FileChannel.MapMode.READ_WRITE)) return window;
+
+		final long start = (long) w << WINDOW_SHIFT;
+		final long size;
+		if (this.mode != FileChannel.MapMode.READ_WRITE) {
+			size = Math.min(WINDOW_SIZE, this.channel.size() - start);
+		} else if (window == null) {
+			final long expected = Math.max(this.expectedSize, this.channel.size()) - start;
+			size = Math.min(WINDOW_SIZE, Math.max(expected, at + Long.BYTES));
+		} else {
+			size = Math.min(WINDOW_SIZE, Math.max(2L * window.limit(), at + Long.BYTES));
+		}
+		this.windows[w] = this.channel.map(this.mode, start, size);
+		this.windows[w].order(ByteOrder.LITTLE_ENDIAN);
+		return this.windows[w];
+	}
+}
@@ -0,0 +1,13 @@
+package alouw.csc552.hamming;
+
+/*
+ * An engine that produces an ordered sequence of smooth numbers. 
+ * 
+ * A generator is configured when it is created (see HammingGeneratorFactory); start generates the 
+ * configured numbers in ascending order and blocks until they have all been produced.
+ */
+public interface HammingGenerator {
+
+	/* generate the configured numbers, blocking until complete */
+	public void start();
+}
@@ -0,0 +1,131 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * An enum factory for the engines that can generate a sequence of smooth numbers.
+ * 
+ * NETWORK_ENGINE builds a configured HammingNetwork, PULL_NETWORK_ENGINE the same network with
+ * demand-driven nodes (HammingNetworkFlow.PULL) and FUSED_NETWORK_ENGINE the same network with its
+ * multiply nodes fused into the copy node (HammingNetworkFlow.FUSED); SEQUENTIAL_ENGINE the single-threaded 
+ * SequentialHammingGenerator, which ignores the network-only arguments. AUTOMATIC picks the sequential
+ * engine up to SEQUENTIAL_MAX_NUMBERS numbers, where handing values between threads costs more than 
+ * the arithmetic, and the network beyond that. CACHED_ENGINE answers from, and extends, a file of the
+ * numbers earlier runs generated (see CachedHammingGenerator). PARALLEL_ENGINE builds segments of the
+ * sequence on the common ForkJoinPool (see ParallelHammingGenerator) and, like the sequential engine,
+ * ignores the network-only arguments. Every engine writes its numbers to the given sink.
+ */
+public enum HammingGeneratorFactory {
+
+	NETWORK_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			final HammingNetwork network = new HammingNetwork();
+			network.configure(threshold, duration, uom, batchSize, mode, primes, sink);
+			return network;
+		}
+	},
+	
+	PULL_NETWORK_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			final HammingNetwork network = new HammingNetwork();
+			network.configure(threshold, duration, uom, batchSize, mode, primes, sink, 
+					new HammingNetworkCapacities(HammingNetworkCapacities.DEFAULT_MEMORY_BUDGET), HammingNetworkFlow.PULL);
+			return network;
+		}
+	},
+	
+	FUSED_NETWORK_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			final HammingNetwork network = new HammingNetwork();
+			network.configure(threshold, duration, uom, batchSize, mode, primes, sink, 
+					new HammingNetworkCapacities(HammingNetworkCapacities.DEFAULT_MEMORY_BUDGET), HammingNetworkFlow.FUSED);
+			return network;
+		}
+	},
+	
+	SEQUENTIAL_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			return new SequentialHammingGenerator(threshold, primes, sink);
+		}
+	},
+	
+	PARALLEL_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			return new ParallelHammingGenerator(threshold, primes, sink);
+		}
+	},
+	
+	CACHED_ENGINE {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			return new CachedHammingGenerator(CachedHammingGenerator.cacheFile(primes), threshold, primes, sink);
+		}
+	},
+	
+	AUTOMATIC {
+		public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+				final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+				final HammingNetworkSink sink) {
+			final HammingGeneratorFactory engine = 
+					threshold <= SEQUENTIAL_MAX_NUMBERS ? SEQUENTIAL_ENGINE : NETWORK_ENGINE;
+			return engine.getInstance(threshold, duration, uom, batchSize, mode, primes, sink);
+		}
+	};
+	
+	public abstract HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+			final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes,
+			final HammingNetworkSink sink);
+	
+	public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom,
+			final int batchSize, final HammingNetworkExecutionMode mode, final List<Long> primes) {
+		return getInstance(threshold, duration, uom, batchSize, mode, primes, 
+				HammingNetworkSinkFactory.CONSOLE_SINK.getInstance(null));
+	}
+	
+	public HammingGenerator getInstance(final long threshold, final long duration, final TimeUnit uom) {
+		return getInstance(threshold, duration, uom, HammingNetwork.DEFAULT_BATCH_SIZE,
+				HammingNetworkExecutionMode.PLATFORM_THREADS, HammingNetwork.DEFAULT_PRIMES);
+	}
+	
+	final static long SEQUENTIAL_MAX_NUMBERS = 1L << 24;
+	
+	/* the chance that checkPrimes takes a composite factor for a prime is below 2^-PRIME_CERTAINTY */
+	private final static int PRIME_CERTAINTY = 100;
+	
+	/*
+	 * primes must be a non-empty list of distinct primes: a composite factor such as 4 in {2, 4} gives
+	 * the same number more than one exponent vector, which the lattice-based engines count twice
+	 */
+	static void checkPrimes(final List<Long> primes) {
+		if (primes.isEmpty()) throw new IllegalArgumentException("At least one prime is required");
+		if (new HashSet<>(primes).size() != primes.size()) throw new IllegalArgumentException("Primes must be distinct");
+		for (Long prime : primes) {
+			if (prime.longValue() < 2) throw new IllegalArgumentException("Primes must be at least 2: " + prime);
+			if (!BigInteger.valueOf(prime.longValue()).isProbablePrime(PRIME_CERTAINTY)) {
+				throw new IllegalArgumentException("Factors must be prime: " + prime);
+			}
+		}
+	}
+	
+	/* comma-separated primes, e.g. 2,3,5 */
+	public static List<Long> parsePrimes(final String primes) {
+		final List<Long> parsed = new ArrayList<>();
+		for (String prime : primes.split(",")) parsed.add(Long.valueOf(prime.trim()));
+		return parsed;
+	}
+}
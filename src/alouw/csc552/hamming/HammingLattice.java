@@ -0,0 +1,459 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/*
+ * Point queries on a sequence of smooth numbers without generating it.
+ *
+ * A number p_0^e_0 * p_1^e_1 * ... is the lattice point (e_0, e_1, ...) and its logarithm is the
+ * weighted sum e_0 ln p_0 + e_1 ln p_1 + .... Counting the numbers at most X is counting the lattice
+ * points under the hyperplane through ln X: walk every row of the outer exponents and work out the
+ * innermost (smallest prime) exponent with one division. For k primes that is O((ln X)^(k-1)) rows,
+ * which for {2,3,5} is O(N^(2/3)) for the Nth number.
+ *
+ * The Nth number comes from the same count: the volume of the simplex estimates its logarithm, a few
+ * counts correct the estimate (with many primes it is off by millions of points), a narrow band of
+ * logarithms around it is widened until the counts below and above the band bracket N, and only the
+ * points inside the band are enumerated and sorted. The band is the only memory the query needs.
+ * ParallelHammingGenerator enumerates the whole sequence as consecutive bands.
+ *
+ * A range query [a, b] walks the same bands from the logarithm of a to that of b, so its cost follows
+ * the numbers in the range rather than the prefix below it. A band holds about RANGE_NUMBERS numbers by
+ * the simplex estimate, and is at least one step of the smallest prime wide, so that every row walked
+ * holds a number of the band on average; only the numbers of one band are held at a time.
+ *
+ * Logarithms are doubles. A point whose logarithm lands within GAP of a boundary is ambiguous: a count
+ * resolves it exactly with BigInteger arithmetic, and a band boundary is nudged off it. Points whose
+ * logarithms are within GAP of each other are ordered exactly.
+ *
+ * Counting points counts numbers only when every number is exactly one point, which holds when the
+ * factors are pairwise coprime (primes, but also {4, 9}); with {2, 4} the points (2, 0) and (0, 1) are
+ * both 4. The constructor rejects factors that share a divisor.
+ *
+ * Thread safety policy: instances are immutable.
+ */
+public class HammingLattice {
+
+	private static final double GAP = 1e-9;
+	private static final long BAND_NUMBERS = 64;
+	private static final int LOCATE_STEPS = 8;
+	static final long RANGE_NUMBERS = 1 << 12;
+	private static final double LN2 = Math.log(2);
+
+	private final long[] primes;
+	private final double[] logs;
+
+	public HammingLattice(final List<Long> primes) {
+		checkCoprime(primes);
+		this.primes = new long[primes.size()];
+		for (int p = 0; p < this.primes.length; p++) this.primes[p] = primes.get(p).longValue();
+		Arrays.sort(this.primes);
+		this.logs = new double[this.primes.length];
+		for (int p = 0; p < this.logs.length; p++) this.logs[p] = Math.log(this.primes[p]);
+	}
+
+	/* factors must be a non-empty list, each at least 2 and coprime to every other */
+	static void checkCoprime(final List<Long> factors) {
+		if (factors.isEmpty()) throw new IllegalArgumentException("At least one factor is required");
+		for (int p = 0; p < factors.size(); p++) {
+			final long factor = factors.get(p).longValue();
+			if (factor < 2) throw new IllegalArgumentException("Factors must be at least 2: " + factor);
+			for (int q = 0; q < p; q++) {
+				if (gcd(factor, factors.get(q).longValue()) != 1) {
+					throw new IllegalArgumentException("Factors must be pairwise coprime: " + factors.get(q) + ", " + factor);
+				}
+			}
+		}
+	}
+
+	private static long gcd(final long a, final long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	/* the number of smooth numbers at most x */
+	public long countUpTo(final long x) {
+		return countUpTo(BigInteger.valueOf(x));
+	}
+
+	/* the number of smooth numbers at most x */
+	public long countUpTo(final BigInteger x) {
+		if (x.signum() < 1) return 0;
+		return countUpTo(this.logs.length - 1, 0, new int[this.logs.length], log(x), x);
+	}
+
+	/* the nth smooth number, counting 1 as the first */
+	public BigInteger nth(final long n) {
+		return neighbourhood(n, 0).get(0);
+	}
+
+	/*
+	 * the smooth numbers ranked n - radius to n + radius in ascending order, clipped at the first
+	 * number of the sequence
+	 */
+	public List<BigInteger> neighbourhood(final long n, final int radius) {
+		if (n < 1) throw new IllegalArgumentException("Ranks start at 1: " + n);
+		if (radius < 0) throw new IllegalArgumentException("Radius must not be negative: " + radius);
+
+		final long first = Math.max(1, n - radius);
+		final long last = Math.addExact(n, radius);
+
+		final double width = width(n);
+		final double center = locate(first);
+
+		// widen the band until it brackets the ranks: below < first and last <= upTo
+		double lo = center - width;
+		long below;
+		for (double step = width;;) {
+			below = countBelow(this.logs.length - 1, 0, lo);
+			if (below < 0) {
+				lo -= 4 * GAP;
+			} else if (below >= first) {
+				lo -= step;
+				step *= 2;
+			} else {
+				break;
+			}
+		}
+
+		double hi = center + (estimate(last) - estimate(first)) + width;
+		long upTo;
+		for (double step = width;;) {
+			upTo = countBelow(this.logs.length - 1, 0, hi);
+			if (upTo < 0) {
+				hi += 4 * GAP;
+			} else if (upTo < last) {
+				hi += step;
+				step *= 2;
+			} else {
+				break;
+			}
+		}
+
+		final List<Point> band = new ArrayList<>((int) (upTo - below));
+		collect(this.logs.length - 1, 0, new int[this.logs.length], lo, hi, band);
+		band.sort(this::compare);
+
+		final List<BigInteger> numbers = new ArrayList<>((int) (last - first + 1));
+		for (long rank = first; rank <= last; rank++) numbers.add(band.get((int) (rank - below - 1)).value(this.primes[0]));
+		return numbers;
+	}
+
+	/*
+	 * a logarithm with about n points below it, within BAND_NUMBERS points or LOCATE_STEPS counts. The
+	 * simplex estimate runs off by a share of n, which with many primes is millions of points: each step
+	 * counts the points below the guess and moves it along the secant through the last two counts.
+	 */
+	private double locate(final long n) {
+		double t = estimate(n);
+		long count = countNear(t);
+		double slope = density(t);
+		for (int steps = 0; Math.abs(n - count) > BAND_NUMBERS && steps < LOCATE_STEPS; steps++) {
+			final double next = t + (n - count) / slope;
+			final long nextCount = countNear(next);
+			if (nextCount != count && next != t) slope = (nextCount - count) / (next - t);
+			t = next;
+			count = nextCount;
+		}
+		return t;
+	}
+
+	/* the number of points below t, or below a bound just above t if a point lies within GAP of it */
+	private long countNear(final double t) {
+		double bound = t;
+		long count;
+		while ((count = countBelow(this.logs.length - 1, 0, bound)) < 0) bound += 4 * GAP;
+		return count;
+	}
+
+	/*
+	 * the smooth numbers from a to b inclusive in ascending order, as the walk finds them: the ones that
+	 * fit in a long go to smallValues, every later one to bigValues
+	 */
+	public void range(final BigInteger a, final BigInteger b, final LongConsumer smallValues,
+			final Consumer<BigInteger> bigValues) {
+		final BigInteger first = a.max(BigInteger.ONE);
+		if (first.compareTo(b) > 0) return;
+
+		// a number at either end may have a logarithm a rounding error off that of the end
+		final double end = clear(log(b) + 2 * GAP);
+		for (double lo = below(first); lo < end;) {
+			final double hi = Math.min(next(lo), end);
+			for (BigInteger number : between(lo, hi)) {
+				if (number.compareTo(first) < 0 || number.compareTo(b) > 0) continue;
+				if (number.bitLength() < Long.SIZE && number.longValue() != HammingNetworkLongChannel.OVERFLOW) {
+					smallValues.accept(number.longValue());
+				} else {
+					bigValues.accept(number);
+				}
+			}
+			lo = hi;
+		}
+	}
+
+	/* the smooth numbers from a to b inclusive in ascending order, all of which fit in a long */
+	public void range(final long a, final long b, final LongConsumer numbers) {
+		range(BigInteger.valueOf(a), BigInteger.valueOf(b), numbers, number -> numbers.accept(number.longValue()));
+	}
+
+	/*
+	 * the numbers with logarithm in [lo, hi) in ascending order; lo and hi must be clear bounds, so that
+	 * the numbers on either side of each are ordered by their logarithms
+	 */
+	List<BigInteger> between(final double lo, final double hi) {
+		final List<Point> band = new ArrayList<>();
+		collect(this.logs.length - 1, 0, new int[this.logs.length], lo, hi, band);
+		band.sort(this::compare);
+		final List<BigInteger> numbers = new ArrayList<>(band.size());
+		for (Point point : band) numbers.add(point.value(this.primes[0]));
+		return numbers;
+	}
+
+	/*
+	 * the numbers with logarithm in [lo, hi), in no particular order: the ones that fit in a long go to
+	 * smallValues, every later one to bigValues; lo and hi must be clear bounds. Each row is built by
+	 * multiplying along it, in long arithmetic until it passes the longs.
+	 */
+	void walk(final double lo, final double hi, final LongConsumer smallValues, final Consumer<BigInteger> bigValues) {
+		walk(this.logs.length - 1, 0, 1, null, lo, hi, smallValues, bigValues);
+	}
+
+	/*
+	 * the number of rows a walk below logarithm t visits, estimated by the simplex of the outer primes;
+	 * a count, a band or a walk costs about this many steps whatever the numbers it finds
+	 */
+	double rows(final double t) {
+		final int k = this.logs.length;
+		double volume = 1, shift = 0;
+		for (int p = 1; p < k; p++) {
+			volume *= p * this.logs[p];
+			shift += this.logs[p] / 2;
+		}
+		return Math.max(1, Math.pow(Math.max(0, t + shift), k - 1) / volume);
+	}
+
+	/* a clear bound at or below the logarithm of x */
+	double below(final BigInteger x) {
+		return clear(log(x) - 2 * GAP);
+	}
+
+	/* the clear bound of the range band that starts at the clear bound lo */
+	double next(final double lo) {
+		return clear(Math.max(estimate(simplex(lo) + RANGE_NUMBERS), lo + this.logs[0]));
+	}
+
+	/* the lowest bound at or above bound that no point lies within GAP of; a bound always clears to the same place */
+	double clear(final double bound) {
+		double clear = bound;
+		while (countBelow(this.logs.length - 1, 0, clear) < 0) clear += 4 * GAP;
+		return clear;
+	}
+
+	/* the width of a band around the nth number that holds about BAND_NUMBERS numbers */
+	double width(final long n) {
+		return BAND_NUMBERS / density(estimate(n));
+	}
+
+	private int compare(final Point a, final Point b) {
+		return Math.abs(a.log - b.log) > GAP ? Double.compare(a.log, b.log) : a.value(this.primes[0]).compareTo(b.value(this.primes[0]));
+	}
+
+	/* rows of the outer exponents, innermost exponent solved exactly when its logarithm is ambiguous */
+	private long countUpTo(final int level, final double sum, final int[] exponents, final double bound, final BigInteger x) {
+		if (level == 0) {
+			final double r = (bound - sum) / this.logs[0];
+			final long nearest = Math.round(r);
+			if (Math.abs(r - nearest) < GAP) {
+				if (nearest < 0) return 0;
+				exponents[0] = (int) nearest;
+				return nearest + (value(exponents).compareTo(x) <= 0 ? 1 : 0);
+			}
+			return r < 0 ? 0 : (long) Math.floor(r) + 1;
+		}
+
+		long count = 0;
+		for (int e = 0; sum + e * this.logs[level] < bound + GAP; e++) {
+			exponents[level] = e;
+			count += countUpTo(level - 1, sum + e * this.logs[level], exponents, bound, x);
+		}
+		exponents[level] = 0;
+		return count;
+	}
+
+	/* the number of points with logarithm below bound, or -1 when a point lies within GAP of bound */
+	private long countBelow(final int level, final double sum, final double bound) {
+		if (level == 0) return rowBelow(sum, bound);
+
+		long count = 0;
+		for (int e = 0; sum + e * this.logs[level] < bound + GAP; e++) {
+			final long row = countBelow(level - 1, sum + e * this.logs[level], bound);
+			if (row < 0) return -1;
+			count += row;
+		}
+		return count;
+	}
+
+	/*
+	 * the number of points sum + e * ln p_0 below bound; the point logarithm is always evaluated with
+	 * this same expression so that a count and the band agree on which side of a bound each point is
+	 */
+	private long rowBelow(final double sum, final double bound) {
+		final double step = this.logs[0];
+		final double r = (bound - sum) / step;
+		long e = r <= 0 ? 0 : (long) Math.ceil(r);
+		while (e > 0 && sum + (e - 1) * step >= bound) e--;
+		while (sum + e * step < bound) e++;
+
+		if (e > 0 && bound - (sum + (e - 1) * step) < GAP) return -1;
+		if (sum + e * step - bound < GAP) return -1;
+		return e;
+	}
+
+	private void collect(final int level, final double sum, final int[] exponents, final double lo, final double hi,
+			final List<Point> band) {
+		if (level == 0) {
+			final long from = rowBelow(sum, lo), to = rowBelow(sum, hi);
+			if (from == to) return;
+			// the points of a row share the powers of the outer primes
+			exponents[0] = 0;
+			final BigInteger row = value(exponents);
+			for (long e = from; e < to; e++) band.add(new Point(sum + e * this.logs[0], (int) e, row));
+			return;
+		}
+
+		for (int e = 0; sum + e * this.logs[level] < hi + GAP; e++) {
+			exponents[level] = e;
+			collect(level - 1, sum + e * this.logs[level], exponents, lo, hi, band);
+		}
+		exponents[level] = 0;
+	}
+
+	/*
+	 * the rows below level, whose outer exponents so far multiply to small, or to big once that does not
+	 * fit in a long (small is then unused)
+	 */
+	private void walk(final int level, final double sum, final long small, final BigInteger big, final double lo,
+			final double hi, final LongConsumer smallValues, final Consumer<BigInteger> bigValues) {
+		final long prime = this.primes[level];
+		long value = small;
+		BigInteger number = big;
+		if (level == 0) {
+			final long from = rowBelow(sum, lo), to = rowBelow(sum, hi);
+			if (from == to) return;
+			// the first number of the row is its outer product times prime^from
+			long e = 0;
+			for (long next; number == null && e < from; e++) {
+				if ((next = multiply(value, prime)) == 0) number = BigInteger.valueOf(value).multiply(BigInteger.valueOf(prime));
+				else value = next;
+			}
+			if (e < from) number = power(number, prime, from - e);
+			for (e = from; e < to && number == null; e++) {
+				smallValues.accept(value);
+				final long next = multiply(value, prime);
+				if (next == 0) number = BigInteger.valueOf(value).multiply(BigInteger.valueOf(prime));
+				else value = next;
+			}
+			for (; e < to; e++) {
+				bigValues.accept(number);
+				number = power(number, prime, 1);
+			}
+			return;
+		}
+
+		for (int e = 0; sum + e * this.logs[level] < hi + GAP; e++) {
+			walk(level - 1, sum + e * this.logs[level], value, number, lo, hi, smallValues, bigValues);
+			if (number != null) {
+				number = power(number, prime, 1);
+			} else {
+				final long next = multiply(value, prime);
+				if (next == 0) number = BigInteger.valueOf(value).multiply(BigInteger.valueOf(prime));
+				else value = next;
+			}
+		}
+	}
+
+	/* a * b, or 0 when that does not fit in a long below OVERFLOW */
+	private static long multiply(final long a, final long b) {
+		return a <= (HammingNetworkLongChannel.OVERFLOW - 1) / b ? a * b : 0;
+	}
+
+	private static BigInteger power(final BigInteger x, final long prime, final long exponent) {
+		if (prime == 2) return x.shiftLeft((int) exponent);
+		return x.multiply(BigInteger.valueOf(prime).pow((int) exponent));
+	}
+
+	/*
+	 * the logarithm of the nth number: the simplex e . ln p <= t holds t^k / (k! prod ln p) points, and
+	 * moving its face out by half the sum of ln p accounts for the lattice points on the boundary
+	 */
+	double estimate(final long n) {
+		return estimate((double) n);
+	}
+
+	private double estimate(final double n) {
+		final int k = this.logs.length;
+		double volume = 1, shift = 0;
+		for (int p = 0; p < k; p++) {
+			volume *= (p + 1) * this.logs[p];
+			shift += this.logs[p] / 2;
+		}
+		return Math.max(0, Math.pow(volume * n, 1.0 / k) - shift);
+	}
+
+	/* the number of points the simplex estimates below logarithm t, the inverse of estimate */
+	private double simplex(final double t) {
+		final int k = this.logs.length;
+		double volume = 1, shift = 0;
+		for (int p = 0; p < k; p++) {
+			volume *= (p + 1) * this.logs[p];
+			shift += this.logs[p] / 2;
+		}
+		return Math.pow(Math.max(0, t + shift), k) / volume;
+	}
+
+	/* the number of points per unit of logarithm around t, the derivative of the simplex volume */
+	private double density(final double t) {
+		final int k = this.logs.length;
+		double shift = 0;
+		for (int p = 0; p < k; p++) shift += this.logs[p] / 2;
+		double density = 1;
+		for (int p = 0; p < k; p++) density /= this.logs[p];
+		for (int p = 1; p < k; p++) density *= (t + shift) / p;
+		return Math.max(density, 1);
+	}
+
+	private BigInteger value(final int[] exponents) {
+		BigInteger value = BigInteger.ONE;
+		for (int p = 0; p < exponents.length; p++) {
+			if (exponents[p] > 0) value = value.multiply(BigInteger.valueOf(this.primes[p]).pow(exponents[p]));
+		}
+		return value;
+	}
+
+	private static double log(final BigInteger x) {
+		final int shift = Math.max(0, x.bitLength() - 63);
+		return Math.log(x.shiftRight(shift).doubleValue()) + shift * LN2;
+	}
+
+	/* a lattice point and its logarithm: the number of its row times a power of the smallest prime */
+	private static class Point {
+		final double log;
+		final int exponent;
+		final BigInteger row;
+
+		Point(final double log, final int exponent, final BigInteger row) {
+			this.log = log;
+			this.exponent = exponent;
+			this.row = row;
+		}
+
+		BigInteger value(final long smallest) {
+			if (smallest == 2) return this.row.shiftLeft(this.exponent);
+			return this.row.multiply(BigInteger.valueOf(smallest).pow(this.exponent));
+		}
+	}
+}
@@ -1,129 +1,507 @@
-package alouw.csc552.hamming;
-
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-/*
- * A configurable network of Hamming Nodes. Internally, the network is represented as a <string, node> hashmap.
- * Each node is connected to one or more other nodes via Hamming Channels.
- * 
- * A network will run until either:
- *  (a) generating the solution exceeds the configuration time allowance;
- *  (b) a control node detects that the desired # of Hamming numbers is calculated
- *  
- * In case of (b) above, the control node signals via a HammingNetworkShutdownSignal object that the network
- * should initiate a tear-down of both component nodes and the network itself.
- * 
- */
-public class HammingNetwork{
-	
-	private static final HammingNetworkWorkerNodeFactory workerFactory = new HammingNetworkWorkerNodeFactory();
-	private static final HammingNetworkChannelFactory channelFactory = new HammingNetworkChannelFactory();
-	final static long TEARDOWN_TIME_MAX_DURATION = 1;
-	final static TimeUnit TEARDOWN_TIME_UOM = TimeUnit.MINUTES;
-	
-	private final ExecutorService networkPool = Executors.newCachedThreadPool(
-			new ThreadFactoryWithNamePrefix("HammingNetwork"));
-	
-	private final Map<String, HammingNetworkNode> network = new HashMap<>();
-	private final HammingNetworkShutdownSignal signal = new HammingNetworkShutdownSignal();
-	
-	private volatile Integer maxNumbers;
-	private volatile long duration;
-	private volatile TimeUnit duration_uom;
-	private final AtomicBoolean configured = new AtomicBoolean();
-	
-	public static final HammingNetwork INSTANCE = new HammingNetwork();
-
-	private HammingNetwork() {this.configured.set(false);};
-	
-	public void configure(final int threshold, final long duration, final TimeUnit uom) {
-		
-		// define network parameters
-		this.maxNumbers = Integer.valueOf(threshold);
-		this.duration =  duration;
-		this.duration_uom = uom;
-		
-		// create a shutdown signal
-		this.signal.attachNetwork(this);
-		
-		// define the 3 multiply nodes
-		network.put("mult2", workerFactory.getInstance(new Procedure() {
-			public Integer apply(Integer value) {
-				return Integer.valueOf(value.intValue() * 2);
-			}
-		}, "times2", duration, uom));
-		
-		network.put("mult3", workerFactory.getInstance(new Procedure() {
-			public Integer apply(Integer value) {
-				return Integer.valueOf(value.intValue() * 3);
-			}
-		}, "times3", duration, uom));
-		
-		network.put("mult5", workerFactory.getInstance(new Procedure() {
-			public Integer apply(Integer value) {
-				return Integer.valueOf(value.intValue() * 5);
-			}
-		}, "times5", duration, uom));
-						
-		// create the three control nodes
-		network.put("copy4", HammingNetworkControlNodeFactory.COLLECT_NODE.getInstance(
-				this.maxNumbers, this.signal, this.duration, this.duration_uom));
-		network.put("merge3", HammingNetworkControlNodeFactory.MERGE_NODE.getInstance(
-				this.maxNumbers, this.signal, this.duration, this.duration_uom));
-		network.put("print1", HammingNetworkControlNodeFactory.PRINT_NODE.getInstance(
-				this.maxNumbers, this.signal, this.duration, this.duration_uom));
-				
-		// connect the network starting from the terminal point and working backwards
-		connectTwoNodes("copy4" , "print1");
-		connectTwoNodes("copy4" , "mult2");
-		connectTwoNodes("copy4" , "mult3");
-		connectTwoNodes("copy4" , "mult5");
-		connectTwoNodes("merge3", "copy4");
-		connectTwoNodes("mult2" , "merge3");
-		connectTwoNodes("mult3" , "merge3");
-		connectTwoNodes("mult5" , "merge3");
-		
-		//the network is now configured
-		this.configured.set(true);
-	}
-
-	public void start() {	
-		
-		if (!this.configured.get()) throw new IllegalStateException("This network is not configured");
-		
-		network.values().stream().forEach(n -> networkPool.execute(n));
-		try {
-			networkPool.awaitTermination(this.duration, this.duration_uom);
-		} catch (InterruptedException e) {
-			return;
-		}
-	}
-	
-	public void shutdown()  {
-		network.values().stream().forEach(n -> {
-			try {
-				n.shutdown();
-			} catch (Exception e) {
-				return;
-			}
-		});
-		networkPool.shutdownNow();
-		try {
-			networkPool.awaitTermination(TEARDOWN_TIME_MAX_DURATION, TEARDOWN_TIME_UOM);
-		} catch (InterruptedException e) {
-			return;
-		}
-	}
-	
-	private void connectTwoNodes(final String sourceName, final String targetName) {
-		final HammingNetworkChannel channel = channelFactory.getChannelInstance(
-				sourceName + "_to_" + targetName);
-		network.get(sourceName).addOutputChannel(channel);
-		network.get(targetName).addInputChannel(channel);
-	}
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import ajeffrey.teaching.debug.Debug;
+
+/*
+ * A configurable network of Hamming Nodes. Internally, the network is represented as a <string, node> hashmap.
+ * Each node is connected to one or more other nodes via Hamming Channels.
+ * 
+ * A network will run until either:
+ *  (a) generating the solution exceeds the configuration time allowance;
+ *  (b) every node reports that it has completed
+ *  
+ * In case of (b) above the teardown is cooperative: once the copy node has passed on the desired # of 
+ * Hamming numbers it sends the END poison pill round the network (see HammingNetworkLongChannel), each 
+ * node finishes when the pill reaches it, and the print node completes once its sink is flushed. The
+ * network then releases the nodes' threads; nothing is interrupted. In case of (a), or when the
+ * network is shut down, the nodes still running are interrupted.
+ * 
+ * startAsync returns a future of the run's HammingNetworkTimings: time to first value, generation 
+ * and teardown; start blocks on it.
+ * 
+ * From configure until shutdown every node and channel is published over JMX (see
+ * HammingNetworkNodeMXBean and HammingNetworkChannelMXBean).
+ * 
+ * A network is configured for one run: configure builds a fresh topology, replacing the one of an
+ * earlier run, and start consumes it. Any number of networks can be created and run concurrently or
+ * one after another in the same JVM; on HammingNetworkExecutionMode.SHARED_THREADS they all run on
+ * one pooled set of threads that outlives each run. INSTANCE is one such network, kept for callers
+ * that share it.
+ * 
+ */
+public class HammingNetwork implements HammingGenerator {
+	
+	private static final HammingNetworkWorkerNodeFactory workerFactory = new HammingNetworkWorkerNodeFactory();
+	private static final HammingNetworkChannelFactory channelFactory = new HammingNetworkChannelFactory();
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	public static final List<Long> DEFAULT_PRIMES = Collections.unmodifiableList(Arrays.asList(2L, 3L, 5L));
+	final static long TEARDOWN_TIME_MAX_DURATION = 1;
+	final static TimeUnit TEARDOWN_TIME_UOM = TimeUnit.MINUTES;
+	
+	private volatile ExecutorService networkPool;
+	
+	private final Map<String, HammingNetworkNode> network = new HashMap<>();
+	private volatile HammingNetworkMetrics metrics = new HammingNetworkMetrics();
+	
+	private volatile long maxNumbers;
+	private volatile long duration;
+	private volatile TimeUnit duration_uom;
+	private volatile long channelBytes;
+	private final AtomicBoolean configured = new AtomicBoolean();
+	private final AtomicBoolean running = new AtomicBoolean();
+	private volatile HammingNetworkTimings timings;
+	
+	public static final HammingNetwork INSTANCE = new HammingNetwork();
+
+	public HammingNetwork() {this.configured.set(false);};
+	
+	public void configure(final long threshold, final long duration, final TimeUnit uom) {
+		configure(threshold, duration, uom, DEFAULT_BATCH_SIZE);
+	}
+	
+	/*
+	 * batchSize is the maximum number of values a node moves through a channel in one call; 
+	 * values of 64-1024 amortise the handoff cost without holding back much of the sequence.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize) {
+		configure(threshold, duration, uom, batchSize, HammingNetworkExecutionMode.PLATFORM_THREADS);
+	}
+	
+	/*
+	 * mode selects whether the network and its nodes run on platform-thread pools or on virtual threads.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize,
+			final HammingNetworkExecutionMode mode) {
+		configure(threshold, duration, uom, batchSize, mode, DEFAULT_PRIMES);
+	}
+	
+	/*
+	 * primes are the factors of the smooth numbers to generate: {2, 3, 5} gives the Hamming numbers,
+	 * {2, 3, 5, 7} the 7-smooth numbers and so on. The network has one multiply node per prime feeding
+	 * a single merge node, whose output is copied to every multiply node and to the print node.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize,
+			final HammingNetworkExecutionMode mode, final List<Long> primes) {
+		configure(threshold, duration, uom, batchSize, mode, primes, HammingNetworkSinkFactory.CONSOLE_SINK.getInstance(null));
+	}
+	
+	/*
+	 * sink receives the numbers from the print node (see HammingNetworkSinkFactory); the print node
+	 * closes it once the last number is written.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize,
+			final HammingNetworkExecutionMode mode, final List<Long> primes, final HammingNetworkSink sink) {
+		configure(threshold, duration, uom, batchSize, mode, primes, sink, 
+				new HammingNetworkCapacities(HammingNetworkCapacities.DEFAULT_MEMORY_BUDGET));
+	}
+	
+	/*
+	 * capacities bounds every channel and sets how each one waits; a producer waits while its channel
+	 * is full. Throws an IllegalArgumentException if a merge input is too small for threshold numbers or
+	 * if the channels at capacity would not fit in the memory budget.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize,
+			final HammingNetworkExecutionMode mode, final List<Long> primes, final HammingNetworkSink sink,
+			final HammingNetworkCapacities capacities) {
+		configure(threshold, duration, uom, batchSize, mode, primes, sink, capacities, HammingNetworkFlow.PUSH);
+	}
+	
+	/*
+	 * flow selects push or pull (demand-driven) nodes, or push nodes with the multiply nodes fused into
+	 * the copy node, see HammingNetworkFlow. A pull network has no buffered channels, so it ignores 
+	 * batchSize and capacities.
+	 */
+	public void configure(final long threshold, final long duration, final TimeUnit uom, final int batchSize,
+			final HammingNetworkExecutionMode mode, final List<Long> primes, final HammingNetworkSink sink,
+			final HammingNetworkCapacities capacities, final HammingNetworkFlow flow) {
+		
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+		HammingGeneratorFactory.checkPrimes(primes);
+		if (this.running.get()) throw new IllegalStateException("This network is running");
+		
+		// drop the topology of an earlier run
+		this.configured.set(false);
+		this.network.clear();
+		this.metrics.unregister();
+		this.metrics = new HammingNetworkMetrics();
+		
+		// define network parameters
+		this.maxNumbers = threshold;
+		this.duration =  duration;
+		this.duration_uom = uom;
+		this.networkPool = mode.newNetworkPool("HammingNetwork");
+		
+		final String merge = "merge" + primes.size();
+		final String copy = "copy" + (primes.size() + 1);
+		
+		if (flow == HammingNetworkFlow.PULL) {
+			// demand-driven nodes: only the print node runs a loop, pulling through the others
+			for (Long prime : primes) {
+				network.put("mult" + prime, workerFactory.getPullInstance(multiplyBy(prime.longValue()), "times" + prime));
+			}
+			network.put(copy, HammingNetworkControlNodeFactory.PULL_COLLECT_NODE.getInstance(
+					this.maxNumbers, batchSize, mode));
+			network.put(merge, HammingNetworkControlNodeFactory.PULL_MERGE_NODE.getInstance(
+					this.maxNumbers, batchSize, mode));
+			network.put("print1", HammingNetworkControlNodeFactory.PRINT_NODE.getInstance(
+					this.maxNumbers, batchSize, mode, sink));
+			
+			connectPullNodes(copy, "print1");
+			for (Long prime : primes) connectPullNodes(copy, "mult" + prime);
+			connectPullNodes(merge, copy);
+			for (Long prime : primes) connectPullNodes("mult" + prime, merge);
+			
+			this.metrics.register(network);
+			this.configured.set(true);
+			return;
+		}
+		
+		// define one multiply node per prime
+		for (Long prime : primes) {
+			network.put("mult" + prime, workerFactory.getInstance(
+					multiplyBy(prime.longValue()), "times" + prime, batchSize, mode));
+		}
+						
+		// create the three control nodes
+		network.put(copy, HammingNetworkControlNodeFactory.COLLECT_NODE.getInstance(
+				this.maxNumbers, batchSize, mode));
+		network.put(merge, HammingNetworkControlNodeFactory.MERGE_NODE.getInstance(
+				this.maxNumbers, batchSize, mode));
+		network.put("print1", HammingNetworkControlNodeFactory.PRINT_NODE.getInstance(
+				this.maxNumbers, batchSize, mode, sink));
+				
+		final List<String[]> edges = topology(merge, copy, primes);
+		
+		final Map<String, Procedure> fused = flow == HammingNetworkFlow.FUSED 
+				? fuse(edges) : Collections.<String, Procedure>emptyMap();
+		
+		// a fan-out writes each value once, into a ring every target reads
+		final Set<String> multicast = multicastSources(edges, capacities);
+		
+		// size every channel before creating any, so that a plan over budget allocates nothing
+		final Map<String, Integer> plan = planCapacities(merge, copy, primes, threshold, batchSize, capacities, 
+				edges, multicast);
+		
+		final Map<String, HammingNetworkMulticastRingChannelImpl> rings = new HashMap<>();
+		for (String[] edge : edges) {
+			if (edge.length > 2) connectFusedNodes(edge[0], edge[2], edge[1], fused.get(edge[2]), plan, capacities);
+			else if (multicast.contains(edge[0])) connectMulticastNodes(edge[0], edge[1], plan, capacities, rings);
+			else connectTwoNodes(edge[0], edge[1], plan, capacities);
+		}
+		
+		//the network is now configured
+		this.metrics.register(network);
+		this.configured.set(true);
+	}
+
+	/* run the network and block until it has been torn down, or the time allowance has run out */
+	@Override
+	public void start() {
+		try {
+			startAsync().join();
+		} catch (CompletionException e) {
+			// out of time: the network has been torn down all the same
+			if (e.getCause() instanceof TimeoutException) return;
+			throw e;
+		}
+	}
+	
+	/*
+	 * Start every node and return at once. The future completes with the run's timings after every node
+	 * has completed and released its threads, and fails with a TimeoutException if that does not happen
+	 * within the configured duration, in which case the nodes still running are interrupted.
+	 */
+	public CompletableFuture<HammingNetworkTimings> startAsync() {
+		
+		if (!this.configured.getAndSet(false)) throw new IllegalStateException("This network is not configured");
+		
+		this.running.set(true);
+		final long started = System.nanoTime();
+		
+		final HammingNetworkNode print = network.get("print1");
+		final AtomicLong generated = new AtomicLong();
+		print.getCompletion().whenComplete((done, failure) -> generated.set(System.nanoTime()));
+		
+		final List<CompletableFuture<Void>> completions = new ArrayList<>();
+		for (HammingNetworkNode node : network.values()) completions.add(node.getCompletion());
+		network.values().stream().forEach(HammingNetworkNode::start);
+		
+		// tear down on the network pool: a node's completion runs on that node's own worker
+		return CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0]))
+				.orTimeout(this.duration, this.duration_uom)
+				.handleAsync((done, failure) -> {
+					release();
+					this.networkPool.shutdown();
+					final long tornDown = System.nanoTime();
+					this.running.set(false);
+					if (failure != null) throw failure instanceof CompletionException 
+							? (CompletionException) failure : new CompletionException(failure);
+					
+					final long first = print.getFirstValueNanos();
+					final HammingNetworkTimings timings = new HammingNetworkTimings(first == 0 ? -1 : first - started,
+							generated.get() - started, tornDown - generated.get());
+					if (Main.DEBUG) Debug.out.println("HammingNetwork " + timings);
+					this.timings = timings;
+					return timings;
+				}, this.networkPool);
+	}
+	
+	/* the timings of the last run that completed, or null */
+	public HammingNetworkTimings getTimings() {
+		return this.timings;
+	}
+	
+	/* interrupt every node that is still running and release the network's threads */
+	public void shutdown()  {
+		release();
+		// a run tears itself down on the network pool once its nodes have stopped
+		if (this.running.get()) return;
+		networkPool.shutdownNow();
+		try {
+			networkPool.awaitTermination(TEARDOWN_TIME_MAX_DURATION, TEARDOWN_TIME_UOM);
+		} catch (InterruptedException e) {
+			return;
+		}
+	}
+	
+	/* release the nodes' threads, interrupting any node that has not completed */
+	private void release() {
+		network.values().stream().forEach(n -> {
+			try {
+				n.shutdown();
+			} catch (Exception e) {
+				return;
+			}
+		});
+		this.metrics.unregister();
+	}
+	
+	/* the edges of a push network, {source, target}, starting from the terminal point and working backwards */
+	static List<String[]> topology(final String merge, final String copy, final List<Long> primes) {
+		final List<String[]> edges = new ArrayList<>();
+		edges.add(new String[] {copy, "print1"});
+		for (Long prime : primes) edges.add(new String[] {copy, "mult" + prime});
+		edges.add(new String[] {merge, copy});
+		for (Long prime : primes) edges.add(new String[] {"mult" + prime, merge});
+		return edges;
+	}
+	
+	/*
+	 * Multiplies in the 64-bit domain with an exact (overflow-checked) multiply, and in the 
+	 * arbitrary-precision domain once values have left the 64-bit range.
+	 */
+	static Procedure multiplyBy(final long factor) {
+		final BigInteger bigFactor = BigInteger.valueOf(factor);
+		return new Procedure() {
+			public long apply(long value) {
+				return Math.multiplyExact(value, factor);
+			}
+			
+			public BigInteger apply(BigInteger value) {
+				return value.multiply(bigFactor);
+			}
+		};
+	}
+	
+	/* the approximate heap the channels take when every one of them is full */
+	public long getChannelBytes() {
+		return this.channelBytes;
+	}
+	
+	/*
+	 * The capacity of every channel, by name. A merge input for prime p holds the multiples p * h that
+	 * its multiply node produced ahead of the merge: h runs over the numbers in (y / p, y] for the
+	 * largest number y the merge has emitted, and y is at most the number the merge reaches when the
+	 * print node has its threshold - the merge runs ahead of the print node by at most what the channels
+	 * and node batches between them hold. Any other channel feeds a node that keeps up with it.
+	 */
+	private Map<String, Integer> planCapacities(final String merge, final String copy, final List<Long> primes,
+			final long threshold, final int batchSize, final HammingNetworkCapacities capacities,
+			final List<String[]> edges, final Set<String> multicast) {
+		
+		final HammingLattice lattice = new HammingLattice(primes);
+		final long ahead = 2L * HammingNetworkChannelFactory.RING_CAPACITY + 4L * batchSize;
+		final long horizon = threshold > Long.MAX_VALUE - ahead ? Long.MAX_VALUE : Math.max(1, threshold + ahead);
+		final BigInteger last = lattice.nth(horizon);
+		final long slotBytes = last.bitLength() < Long.SIZE ? HammingNetworkCapacities.LONG_SLOT_BYTES 
+				: HammingNetworkCapacities.bigSlotBytes(last.bitLength());
+		
+		final Map<String, Integer> plan = new HashMap<>();
+		long bytes = 0;
+		
+		final List<String> ringEdges = new ArrayList<>();
+		ringEdges.add(copy + "_to_print1");
+		for (Long prime : primes) ringEdges.add(copy + "_to_mult" + prime);
+		ringEdges.add(merge + "_to_" + copy);
+		// a fused edge has no channel of its own
+		ringEdges.retainAll(edges.stream().map(HammingNetwork::planned).collect(Collectors.toList()));
+		final Map<String, Integer> sharedRings = new HashMap<>();
+		for (String edge : ringEdges) {
+			final int capacity = HammingNetworkChannelFactory.ringCapacity(
+					capacities.capacity(edge, HammingNetworkChannelFactory.RING_CAPACITY));
+			plan.put(edge, capacity);
+			// the overflow lane, once values leave the 64-bit range, plus the primitive ring unless it is shared
+			bytes += capacity * (slotBytes > HammingNetworkCapacities.LONG_SLOT_BYTES ? slotBytes : 0);
+			final String source = edge.substring(0, edge.indexOf("_to_"));
+			if (multicast.contains(source)) sharedRings.merge(source, capacity, Math::max);
+			else bytes += capacity * (long) Long.BYTES;
+		}
+		for (int capacity : sharedRings.values()) bytes += capacity * (long) Long.BYTES;
+		
+		for (Long prime : primes) {
+			final String edge = "mult" + prime + "_to_" + merge;
+			final long backlog = horizon - lattice.countUpTo(last.divide(BigInteger.valueOf(prime))) + 2L * batchSize;
+			final int needed = (int) Math.min(backlog, Integer.MAX_VALUE - HammingNetworkChannelFactory.RESERVED_SLOTS);
+			final int capacity = capacities.capacity(edge, needed);
+			if (capacity < needed) throw new IllegalArgumentException("Capacity " + capacity + " of " + edge 
+					+ " is below the " + needed + " values it has to hold for " + threshold + " numbers");
+			plan.put(edge, capacity);
+			bytes += (capacity + (long) HammingNetworkChannelFactory.RESERVED_SLOTS) * slotBytes;
+		}
+		
+		if (bytes > capacities.getMemoryBudget()) throw new IllegalArgumentException("The channels need up to " 
+				+ bytes + " bytes for " + threshold + " numbers, over the memory budget of " 
+				+ capacities.getMemoryBudget() + " bytes");
+		
+		if (Main.DEBUG) Debug.out.println("HammingNetwork channels " + plan + ", up to " + bytes + " bytes");
+		this.channelBytes = bytes;
+		return plan;
+	}
+	
+	/* the name a channel has in the capacity plan: a fused edge keeps the name of the edge into its target */
+	private static String planned(final String[] edge) {
+		return (edge.length == 2 ? edge[0] : edge[2]) + "_to_" + edge[1];
+	}
+	
+	/*
+	 * The graph optimizer: fold every stateless stage (HammingNetworkNode.getFusibleFunction) with one
+	 * edge in and one edge out into the node that feeds it. The two edges become one, {source, target,
+	 * fused node}, whose source applies the function as it puts (see HammingNetworkFusedChannelImpl):
+	 * a method call in place of a channel handoff and a thread. The fused nodes leave the network;
+	 * returns their functions by name.
+	 */
+	private Map<String, Procedure> fuse(final List<String[]> edges) {
+		final Map<String, Procedure> fused = new HashMap<>();
+		for (String name : new ArrayList<>(network.keySet())) {
+			final Procedure function = network.get(name).getFusibleFunction();
+			if (function == null) continue;
+			
+			final List<String[]> in = new ArrayList<>();
+			final List<String[]> out = new ArrayList<>();
+			for (String[] edge : edges) {
+				if (edge[1].equals(name)) in.add(edge);
+				if (edge[0].equals(name)) out.add(edge);
+			}
+			// only a plain edge each way: a chain of stages stays unfused past its first
+			if (in.size() != 1 || out.size() != 1 || in.get(0).length != 2 || out.get(0).length != 2) continue;
+			
+			edges.set(edges.indexOf(in.get(0)), new String[] {in.get(0)[0], out.get(0)[1], name});
+			edges.remove(out.get(0));
+			network.remove(name);
+			fused.put(name, function);
+		}
+		if (Main.DEBUG) Debug.out.println("HammingNetwork fused " + fused.keySet());
+		return fused;
+	}
+	
+	/*
+	 * The nodes whose outputs can share one multicast ring: a node that writes the same values to every
+	 * output (HammingNetworkNode.hasIdenticalOutputs) and has at least two edges out, all of them plain
+	 * ring edges that do not block. A node with fused edges puts different values on each. The ring is
+	 * named source + "_multicast", the name its producer's wait strategy is looked up by.
+	 */
+	private Set<String> multicastSources(final List<String[]> edges, final HammingNetworkCapacities capacities) {
+		final Set<String> sources = new HashSet<>();
+		for (Map.Entry<String, HammingNetworkNode> node : network.entrySet()) {
+			if (!node.getValue().hasIdenticalOutputs()) continue;
+			int outputs = 0;
+			boolean shareable = true;
+			for (String[] edge : edges) {
+				if (!edge[0].equals(node.getKey())) continue;
+				outputs++;
+				shareable &= edge.length == 2 && HammingNetworkChannelFactory.ringEdge(network.get(edge[1]))
+						&& capacities.waitStrategy(planned(edge)) != HammingNetworkWaitStrategy.BLOCK;
+			}
+			shareable &= capacities.waitStrategy(node.getKey() + "_multicast") != HammingNetworkWaitStrategy.BLOCK;
+			if (shareable && outputs > 1) sources.add(node.getKey());
+		}
+		return sources;
+	}
+	
+	/* connect target to the multicast ring of source, creating the ring for source's first edge */
+	private void connectMulticastNodes(final String sourceName, final String targetName, final Map<String, Integer> plan,
+			final HammingNetworkCapacities capacities, final Map<String, HammingNetworkMulticastRingChannelImpl> rings) {
+		final HammingNetworkNode source = network.get(sourceName);
+		final HammingNetworkNode target = network.get(targetName);
+		HammingNetworkMulticastRingChannelImpl ring = rings.get(sourceName);
+		if (ring == null) {
+			// as large as the largest of the edges it stands for
+			int capacity = 1;
+			for (Map.Entry<String, Integer> edge : plan.entrySet()) {
+				if (edge.getKey().startsWith(sourceName + "_to_")) capacity = Math.max(capacity, edge.getValue());
+			}
+			final String name = sourceName + "_multicast";
+			ring = channelFactory.getMulticastChannelInstance(name, capacity, capacities.waitStrategy(name));
+			source.addOutputChannel(ring);
+			rings.put(sourceName, ring);
+		}
+		final String name = sourceName + "_to_" + targetName;
+		final HammingNetworkChannel channel = ring.newConsumer(name, capacities.waitStrategy(name));
+		target.addInputChannel(channel);
+		this.metrics.addChannel(sourceName, targetName, channel);
+	}
+	
+	/* connect source to target through the function of the fused node between them */
+	private void connectFusedNodes(final String sourceName, final String fusedName, final String targetName,
+			final Procedure function, final Map<String, Integer> plan, final HammingNetworkCapacities capacities) {
+		final HammingNetworkNode source = network.get(sourceName);
+		final HammingNetworkNode target = network.get(targetName);
+		final String name = sourceName + "_to_" + fusedName + "_to_" + targetName;
+		final String planned = fusedName + "_to_" + targetName;
+		final HammingNetworkChannel channel = channelFactory.getChannelInstance(name, source, target, 
+				plan.get(planned), capacities.waitStrategy(planned));
+		source.addOutputChannel(channelFactory.getFusedChannelInstance(sourceName + "_to_" + fusedName, function, channel));
+		target.addInputChannel(channel);
+		this.metrics.addChannel(sourceName, targetName, channel);
+	}
+	
+	private void connectPullNodes(final String sourceName, final String targetName) {
+		final HammingNetworkNode source = network.get(sourceName);
+		final HammingNetworkNode target = network.get(targetName);
+		final HammingNetworkChannel channel = channelFactory.getPullChannelInstance(
+				sourceName + "_to_" + targetName, (HammingNetworkPullSource) source);
+		source.addOutputChannel(channel);
+		target.addInputChannel(channel);
+		this.metrics.addChannel(sourceName, targetName, channel);
+	}
+	
+	private void connectTwoNodes(final String sourceName, final String targetName, final Map<String, Integer> plan,
+			final HammingNetworkCapacities capacities) {
+		final HammingNetworkNode source = network.get(sourceName);
+		final HammingNetworkNode target = network.get(targetName);
+		final String name = sourceName + "_to_" + targetName;
+		final HammingNetworkChannel channel = channelFactory.getChannelInstance(name, source, target, plan.get(name), 
+				capacities.waitStrategy(name));
+		source.addOutputChannel(channel);
+		target.addInputChannel(channel);
+		this.metrics.addChannel(sourceName, targetName, channel);
+	}
 }
\ No newline at end of file
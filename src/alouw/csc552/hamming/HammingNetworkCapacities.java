@@ -0,0 +1,79 @@
+package alouw.csc552.hamming;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * The channel capacities of a HammingNetwork and the memory budget they must fit in, and how its
+ * channels wait (see HammingNetworkWaitStrategy).
+ *
+ * Capacities are given per edge, by channel name ("merge3_to_copy4", "mult5_to_merge3", ...); an edge
+ * without one is sized by the network. A merge input has to hold every multiple its multiply node
+ * produced ahead of the merge, which depends on the run length, so the network sizes it from the
+ * exponent lattice (HammingLattice) and rejects a smaller capacity, which would deadlock the cycle.
+ * The total footprint of the channels at capacity is checked against the budget when the network is
+ * configured.
+ *
+ * Wait strategies are given for the whole network and, to override it, per edge by the same names.
+ *
+ * Thread safety policy: instances are immutable.
+ */
+public class HammingNetworkCapacities {
+
+	public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 2;
+
+	/* approximate heap cost of a boxed long in a deque: the Long and the deque node */
+	static final long LONG_SLOT_BYTES = 40;
+
+	private final long memoryBudget;
+	private final Map<String, Integer> capacities;
+	private final HammingNetworkWaitStrategy waitStrategy;
+	private final Map<String, HammingNetworkWaitStrategy> waitStrategies;
+
+	public HammingNetworkCapacities(final long memoryBudget) {
+		this(memoryBudget, Collections.<String, Integer>emptyMap());
+	}
+
+	public HammingNetworkCapacities(final long memoryBudget, final Map<String, Integer> capacities) {
+		this(memoryBudget, capacities, HammingNetworkWaitStrategy.AUTOMATIC);
+	}
+
+	public HammingNetworkCapacities(final long memoryBudget, final Map<String, Integer> capacities,
+			final HammingNetworkWaitStrategy waitStrategy) {
+		this(memoryBudget, capacities, waitStrategy, Collections.<String, HammingNetworkWaitStrategy>emptyMap());
+	}
+
+	public HammingNetworkCapacities(final long memoryBudget, final Map<String, Integer> capacities,
+			final HammingNetworkWaitStrategy waitStrategy, final Map<String, HammingNetworkWaitStrategy> waitStrategies) {
+		if (memoryBudget < 1) throw new IllegalArgumentException("Memory budget must be positive");
+		for (Map.Entry<String, Integer> capacity : capacities.entrySet()) {
+			if (capacity.getValue() < 1) throw new IllegalArgumentException("Channel capacity must be positive: " + capacity.getKey());
+		}
+		this.memoryBudget = memoryBudget;
+		this.capacities = Collections.unmodifiableMap(new HashMap<>(capacities));
+		this.waitStrategy = waitStrategy;
+		this.waitStrategies = Collections.unmodifiableMap(new HashMap<>(waitStrategies));
+	}
+
+	public long getMemoryBudget() {
+		return this.memoryBudget;
+	}
+
+	/* the configured capacity of edge, or automatic if it has none */
+	int capacity(final String edge, final int automatic) {
+		final Integer capacity = this.capacities.get(edge);
+		return capacity == null ? automatic : capacity.intValue();
+	}
+
+	/* the wait strategy of edge, or the network's if it has none */
+	HammingNetworkWaitStrategy waitStrategy(final String edge) {
+		final HammingNetworkWaitStrategy waitStrategy = this.waitStrategies.get(edge);
+		return waitStrategy == null ? this.waitStrategy : waitStrategy;
+	}
+
+	/* approximate heap cost of a BigInteger of the given bit length in a deque */
+	static long bigSlotBytes(final int bits) {
+		return 24 + 40 + 16 + 4L * ((bits + 31) / 32);
+	}
+}
@@ -1,14 +1,17 @@
-package alouw.csc552.hamming;
-
-/*
- * A thread-safe, FIFO, blocking channel. 
- * Channels are independent of all consumer/producers and are responsible
- * only for managing their own state in a thread-safe manner.
- */
-public interface HammingNetworkChannel {
-
-	public void putFirst(Integer value) throws InterruptedException;
-	public Integer takeFirst() throws InterruptedException;
-	public void putLast(Integer value) throws InterruptedException;
-	public Integer takeLast() throws InterruptedException;
-}
\ No newline at end of file
+package alouw.csc552.hamming;
+
+/*
+ * A thread-safe, FIFO, blocking channel. 
+ * Channels are independent of all consumer/producers and are responsible
+ * only for managing their own state in a thread-safe manner.
+ * 
+ * Every channel also offers the primitive HammingNetworkLongChannel contract; nodes on the hot path
+ * should prefer put(long)/take() over the boxed operations below.
+ */
+public interface HammingNetworkChannel extends HammingNetworkLongChannel {
+
+	public void putFirst(Long value) throws InterruptedException;
+	public Long takeFirst() throws InterruptedException;
+	public void putLast(Long value) throws InterruptedException;
+	public Long takeLast() throws InterruptedException;
+}
@@ -1,51 +1,838 @@
-package alouw.csc552.hamming;
-
-import java.util.concurrent.LinkedBlockingDeque;
-
-/*
- * A factory for producing Hamming Channels. 
- */
-public class HammingNetworkChannelFactory {
-
-	public HammingNetworkChannel getChannelInstance(String name) {
-		return new HammingNetworkBlockingChannelImpl(name);
-	}
-}
-
-/*
- * Thread safety policy: each channel delegates thread-safety to a blocking deque.
- */
-class HammingNetworkBlockingChannelImpl implements HammingNetworkChannel {
-	
-	private final String name;
-	private final LinkedBlockingDeque<Integer> deque;
-	
-	HammingNetworkBlockingChannelImpl(String name) {
-		this.deque = new LinkedBlockingDeque<Integer>();
-		this.name = name;
-	}
-
-	@Override
-	public void putFirst(Integer value) throws InterruptedException {
-		this.deque.putFirst(value);
-	}
-
-	@Override
-	public Integer takeFirst() throws InterruptedException {
-		return this.deque.takeFirst();
-	}
-
-	@Override
-	public void putLast(Integer value) throws InterruptedException {
-		this.deque.putLast(value);
-	}
-
-	@Override
-	public Integer takeLast() throws InterruptedException {
-		return this.deque.takeLast();
-	}
-	
-	public String toString() {
-		return this.name;
-	}
-}
\ No newline at end of file
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * A factory for producing Hamming Channels.
+ *
+ * The factory chooses an implementation per edge: an edge whose consumer reads its inputs strictly
+ * FIFO from a single thread, and keeps the backlog bounded, gets a bounded single-producer/single-consumer
+ * ring of primitive longs; any other edge gets a blocking deque. A merge node's backlog grows with the
+ * run (an input holds every multiple not yet merged), so its inputs are deques sized for the run (see
+ * HammingNetworkCapacities).
+ *
+ * Every channel is bounded unless it is created with UNBOUNDED: a producer blocks while its channel is
+ * full.
+ *
+ * A node that writes the same values to several ring edges (a copy node) can write them once to a
+ * multicast ring instead, which every consumer reads through a cursor of its own.
+ *
+ * An edge between two processes is a socket, each process holding one end of it (see
+ * HammingNetworkProcessLauncher).
+ *
+ * A channel waits with a HammingNetworkWaitStrategy, AUTOMATIC unless one is given: BLOCK gives every
+ * edge a blocking deque, and the spinning strategies keep the edge's implementation and change how it
+ * waits.
+ */
+public class HammingNetworkChannelFactory {
+
+	final static int RING_CAPACITY = 1024;
+	public final static int UNBOUNDED = Integer.MAX_VALUE;
+	/* a deque channel holds up to RESERVED_SLOTS values its consumer pushed back over its capacity */
+	final static int RESERVED_SLOTS = 2;
+
+	public HammingNetworkChannel getChannelInstance(String name) {
+		return new HammingNetworkBlockingChannelImpl(name, UNBOUNDED);
+	}
+
+	public HammingNetworkChannel getChannelInstance(String name,
+			final HammingNetworkNode source, final HammingNetworkNode target) {
+		return getChannelInstance(name, source, target, ringEdge(target) ? RING_CAPACITY : UNBOUNDED);
+	}
+
+	/* capacity is rounded up to a power of two on a ring edge */
+	public HammingNetworkChannel getChannelInstance(String name,
+			final HammingNetworkNode source, final HammingNetworkNode target, final int capacity) {
+		return getChannelInstance(name, source, target, capacity, HammingNetworkWaitStrategy.AUTOMATIC);
+	}
+
+	public HammingNetworkChannel getChannelInstance(String name,
+			final HammingNetworkNode source, final HammingNetworkNode target, final int capacity,
+			final HammingNetworkWaitStrategy waitStrategy) {
+		if (capacity < 1) throw new IllegalArgumentException("Channel capacity must be positive: " + name);
+		if (ringEdge(target) && waitStrategy != HammingNetworkWaitStrategy.BLOCK) {
+			return new HammingNetworkSpscRingChannelImpl(name, ringCapacity(capacity), waitStrategy.forRing());
+		}
+		return new HammingNetworkBlockingChannelImpl(name, capacity, waitStrategy.forDeque());
+	}
+
+	/*
+	 * a ring the producer writes each value to once, for any number of consumers; each consumer reads
+	 * from its own channel, see HammingNetworkMulticastRingChannelImpl.newConsumer
+	 */
+	HammingNetworkMulticastRingChannelImpl getMulticastChannelInstance(String name, final int capacity,
+			final HammingNetworkWaitStrategy waitStrategy) {
+		if (capacity < 1) throw new IllegalArgumentException("Channel capacity must be positive: " + name);
+		return new HammingNetworkMulticastRingChannelImpl(name, ringCapacity(capacity), waitStrategy);
+	}
+
+	/*
+	 * one end of a connected socket: values put on it are written to the other end, and values taken
+	 * from it were put on the other end; see HammingNetworkSocketChannelImpl
+	 */
+	HammingNetworkSocketChannelImpl getSocketChannelInstance(String name, final SocketChannel socket) {
+		return new HammingNetworkSocketChannelImpl(name, socket);
+	}
+
+	/* a channel whose take asks source for the next value; see HammingNetworkPullSource */
+	public HammingNetworkChannel getPullChannelInstance(String name, final HammingNetworkPullSource source) {
+		return new HammingNetworkPullChannelImpl(name, source);
+	}
+
+	/*
+	 * a channel that applies function to every value put and puts the result on target, on the putting
+	 * thread; see HammingNetwork's operator fusion
+	 */
+	public HammingNetworkChannel getFusedChannelInstance(String name, final Procedure function,
+			final HammingNetworkChannel target) {
+		return new HammingNetworkFusedChannelImpl(name, function, target);
+	}
+
+	static boolean ringEdge(final HammingNetworkNode target) {
+		return target.hasSingleConsumerInputs() && target.hasBoundedInputBacklog();
+	}
+
+	static int ringCapacity(final int capacity) {
+		return capacity <= 2 ? 2 : Integer.highestOneBit(Math.min(capacity - 1, 1 << 29)) << 1;
+	}
+}
+
+/*
+ * Thread safety policy: each channel delegates thread-safety to a blocking deque per lane.
+ *
+ * A bounded channel counts the values in both lanes against one capacity with a semaphore: a put
+ * waits for a permit and a take returns one. A push-back (putFirst, putFirstOverflow) never waits,
+ * since it comes from the consumer, which would then never take the value that frees the permit: it
+ * takes a free permit if there is one and otherwise borrows one of RESERVED_SLOTS, which the next take
+ * pays back. A consumer pushes back at most the one value it has just taken from each lane, so a
+ * channel never holds more than capacity + RESERVED_SLOTS values.
+ *
+ * The metrics are written by one producer or one consumer at a time, so each counter is published
+ * with an ordered store. A put or take only reads the clock once it has failed to go through without
+ * waiting.
+ *
+ * A side that has to wait polls its lane (or its permits) as the wait strategy says, and blocks on the
+ * deque (or the semaphore) once the strategy gives up, so that the other side signals it. Under BLOCK
+ * it blocks at once; under SPIN and SPIN_YIELD it never does.
+ */
+class HammingNetworkBlockingChannelImpl implements HammingNetworkChannel, HammingNetworkChannelMXBean {
+
+	private static final int RESERVED_SLOTS = HammingNetworkChannelFactory.RESERVED_SLOTS;
+
+	private static final AtomicLongFieldUpdater<HammingNetworkBlockingChannelImpl> PUTS =
+			AtomicLongFieldUpdater.newUpdater(HammingNetworkBlockingChannelImpl.class, "putCount");
+	private static final AtomicLongFieldUpdater<HammingNetworkBlockingChannelImpl> TAKES =
+			AtomicLongFieldUpdater.newUpdater(HammingNetworkBlockingChannelImpl.class, "takeCount");
+
+	private final String name;
+	private final LinkedBlockingDeque<Long> deque;
+	private final LinkedBlockingDeque<BigInteger> overflow = new LinkedBlockingDeque<>();
+	private final int capacity;
+	private final Semaphore permits;
+	private final AtomicInteger borrowed = new AtomicInteger();
+	private final HammingNetworkWaitStrategy waitStrategy;
+
+	private volatile long putCount;
+	private volatile long takeCount;
+	private volatile long putBlockedNanos;
+	private volatile long takeBlockedNanos;
+
+	HammingNetworkBlockingChannelImpl(String name, final int capacity) {
+		this(name, capacity, HammingNetworkWaitStrategy.BLOCK);
+	}
+
+	HammingNetworkBlockingChannelImpl(String name, final int capacity, final HammingNetworkWaitStrategy waitStrategy) {
+		this.deque = new LinkedBlockingDeque<Long>();
+		this.name = name;
+		this.capacity = capacity;
+		this.permits = capacity == HammingNetworkChannelFactory.UNBOUNDED ? null : new Semaphore(capacity);
+		this.waitStrategy = waitStrategy.forDeque();
+	}
+
+	private void acquire(final int count) throws InterruptedException {
+		if (this.permits == null || this.permits.tryAcquire(count)) return;
+		final long start = System.nanoTime();
+		try {
+			for (int tries = 0; !this.waitStrategy.blocks(tries);) {
+				tries = this.waitStrategy.idle(tries);
+				if (this.permits.tryAcquire(count)) return;
+			}
+			this.permits.acquire(count);
+		} finally {
+			this.putBlockedNanos += System.nanoTime() - start;
+		}
+	}
+
+	private void release(int count) {
+		if (this.permits == null) return;
+		for (int b; count > 0 && (b = this.borrowed.get()) > 0;) {
+			if (this.borrowed.compareAndSet(b, b - 1)) count--;
+		}
+		if (count > 0) this.permits.release(count);
+	}
+
+	private void pushBack() {
+		if (this.permits == null || this.permits.tryAcquire()) return;
+		if (this.borrowed.incrementAndGet() > RESERVED_SLOTS) 
+			throw new IllegalStateException("More than " + RESERVED_SLOTS + " values pushed back onto " + this.name);
+	}
+
+	/* the first (or last) value of lane, timing the wait if the lane is empty */
+	private <T> T takeFrom(final LinkedBlockingDeque<T> lane, final boolean first) throws InterruptedException {
+		T value = first ? lane.pollFirst() : lane.pollLast();
+		if (value != null) return value;
+		final long start = System.nanoTime();
+		try {
+			for (int tries = 0; !this.waitStrategy.blocks(tries);) {
+				tries = this.waitStrategy.idle(tries);
+				if ((value = first ? lane.pollFirst() : lane.pollLast()) != null) return value;
+			}
+			return first ? lane.takeFirst() : lane.takeLast();
+		} finally {
+			this.takeBlockedNanos += System.nanoTime() - start;
+		}
+	}
+
+	private void countPuts(final int count) {
+		PUTS.lazySet(this, this.putCount + count);
+	}
+
+	private void countTakes(final int count) {
+		TAKES.lazySet(this, this.takeCount + count);
+	}
+
+	@Override
+	public void putFirst(Long value) throws InterruptedException {
+		pushBack();
+		this.deque.putFirst(value);
+		countTakes(-1);
+	}
+
+	@Override
+	public Long takeFirst() throws InterruptedException {
+		final Long value = takeFrom(this.deque, true);
+		release(1);
+		countTakes(1);
+		return value;
+	}
+
+	@Override
+	public void putLast(Long value) throws InterruptedException {
+		acquire(1);
+		this.deque.putLast(value);
+		countPuts(1);
+	}
+
+	@Override
+	public Long takeLast() throws InterruptedException {
+		final Long value = takeFrom(this.deque, false);
+		release(1);
+		countTakes(1);
+		return value;
+	}
+
+	@Override
+	public void put(long value) throws InterruptedException {
+		acquire(1);
+		this.deque.putLast(Long.valueOf(value));
+		countPuts(1);
+	}
+
+	@Override
+	public long take() throws InterruptedException {
+		final long value = takeFrom(this.deque, true).longValue();
+		release(1);
+		countTakes(1);
+		return value;
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) throws InterruptedException {
+		// a batch larger than the capacity goes in capacity-sized pieces
+		for (int done = 0; done < length;) {
+			final int count = Math.min(length - done, this.capacity);
+			acquire(count);
+			for (int k = offset + done; k < offset + done + count; k++) this.deque.putLast(Long.valueOf(values[k]));
+			countPuts(count);
+			done += count;
+		}
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException {
+		buffer[0] = takeFrom(this.deque, true).longValue();
+		int count = 1;
+		Long value;
+		while (count < maxElements && (value = this.deque.pollFirst()) != null) buffer[count++] = value.longValue();
+		release(count);
+		countTakes(count);
+		return count;
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) throws InterruptedException {
+		acquire(1);
+		this.overflow.putLast(value);
+		countPuts(1);
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) throws InterruptedException {
+		pushBack();
+		this.overflow.putFirst(value);
+		countTakes(-1);
+	}
+
+	@Override
+	public BigInteger takeOverflow() throws InterruptedException {
+		final BigInteger value = takeFrom(this.overflow, true);
+		release(1);
+		countTakes(1);
+		return value;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	@Override
+	public long getDepth() {
+		// a consumer may count a value before its producer has, for a moment
+		return Math.max(0, this.putCount - this.takeCount);
+	}
+
+	@Override
+	public long getPutCount() {
+		return this.putCount;
+	}
+
+	@Override
+	public long getTakeCount() {
+		return this.takeCount;
+	}
+
+	@Override
+	public long getPutBlockedNanos() {
+		return this.putBlockedNanos;
+	}
+
+	@Override
+	public long getTakeBlockedNanos() {
+		return this.takeBlockedNanos;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
+
+/*
+ * Cache-line padding for HammingNetworkSpscRingChannelImpl. The JVM lays out superclass fields before
+ * subclass fields, so each 64-byte pad keeps the consumer index (head) and the producer index (tail)
+ * on separate cache lines from each other and from neighbouring objects.
+ */
+abstract class SpscRingPadHead {
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SpscRingHead extends SpscRingPadHead {
+	static final AtomicLongFieldUpdater<SpscRingHead> HEAD =
+			AtomicLongFieldUpdater.newUpdater(SpscRingHead.class, "head");
+
+	volatile long head;
+	long cachedTail;
+	volatile long takeBlockedNanos;
+}
+
+abstract class SpscRingPadMid extends SpscRingHead {
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class SpscRingTail extends SpscRingPadMid {
+	static final AtomicLongFieldUpdater<SpscRingTail> TAIL =
+			AtomicLongFieldUpdater.newUpdater(SpscRingTail.class, "tail");
+
+	volatile long tail;
+	long cachedHead;
+	volatile long putBlockedNanos;
+}
+
+abstract class SpscRingPadTail extends SpscRingTail {
+	long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+/*
+ * A bounded ring buffer of primitive longs for an edge with exactly one producer thread and exactly
+ * one consumer thread.
+ *
+ * Thread safety policy: only the producer writes tail and only the consumer writes head. Each side
+ * publishes its index with an ordered store (lazySet) after touching the buffer, and keeps a cached
+ * copy of the other side's index so that the other side's cache line is only re-read when the ring
+ * looks full (producer) or empty (consumer). A side that cannot make progress waits as its wait
+ * strategy says: by default it spins, then yields, then parks for short intervals, checking for
+ * interrupts while parked. Neither side ever signals the other, so a ring never blocks outright.
+ *
+ * The indices double as the put and take counts of the primitive lane. Each side keeps its blocked
+ * time next to its index and only reads the clock once it has to wait.
+ *
+ * The ring is strictly FIFO: putFirst and takeLast are not supported. Values past the 64-bit range
+ * leave the hot path entirely, so the overflow lane is a plain blocking deque with the same capacity.
+ */
+class HammingNetworkSpscRingChannelImpl extends SpscRingPadTail implements HammingNetworkChannel, HammingNetworkChannelMXBean {
+
+	private final String name;
+	private final long[] buffer;
+	private final int mask;
+	private final LinkedBlockingDeque<BigInteger> overflow;
+	private volatile long overflowPuts;
+	private volatile long overflowTakes;
+	private final HammingNetworkWaitStrategy waitStrategy;
+
+	HammingNetworkSpscRingChannelImpl(String name, final int capacity) {
+		this(name, capacity, HammingNetworkWaitStrategy.SPIN_PARK);
+	}
+
+	HammingNetworkSpscRingChannelImpl(String name, final int capacity, final HammingNetworkWaitStrategy waitStrategy) {
+		if (capacity < 2 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Ring capacity must be a power of two");
+		if (waitStrategy == HammingNetworkWaitStrategy.BLOCK)
+			throw new IllegalArgumentException("A ring cannot block: it has no signal");
+		this.name = name;
+		this.waitStrategy = waitStrategy.forRing();
+		this.overflow = new LinkedBlockingDeque<>(capacity);
+		this.buffer = new long[capacity];
+		this.mask = capacity - 1;
+	}
+
+	@Override
+	public void put(long value) throws InterruptedException {
+		final long t = this.tail;
+		if (t - this.cachedHead > this.mask) {
+			int tries = 0;
+			long start = 0;
+			while (t - (this.cachedHead = this.head) > this.mask) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.putBlockedNanos += System.nanoTime() - start;
+		}
+		this.buffer[(int) (t & this.mask)] = value;
+		TAIL.lazySet(this, t + 1);
+	}
+
+	@Override
+	public long take() throws InterruptedException {
+		final long h = this.head;
+		if (h >= this.cachedTail) {
+			int tries = 0;
+			long start = 0;
+			while (h >= (this.cachedTail = this.tail)) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.takeBlockedNanos += System.nanoTime() - start;
+		}
+		final long value = this.buffer[(int) (h & this.mask)];
+		HEAD.lazySet(this, h + 1);
+		return value;
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) throws InterruptedException {
+		final int capacity = this.buffer.length;
+		int done = 0;
+		while (done < length) {
+			final long t = this.tail;
+			long free = capacity - (t - this.cachedHead);
+			if (free < length - done) {
+				int tries = 0;
+				long start = 0;
+				while ((free = capacity - (t - (this.cachedHead = this.head))) == 0) {
+					if (tries == 0) start = System.nanoTime();
+					tries = this.waitStrategy.idle(tries);
+				}
+				if (tries > 0) this.putBlockedNanos += System.nanoTime() - start;
+			}
+			final int count = (int) Math.min(free, length - done);
+			for (int k = 0; k < count; k++) this.buffer[(int) ((t + k) & this.mask)] = values[offset + done + k];
+			TAIL.lazySet(this, t + count);
+			done += count;
+		}
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException {
+		final long h = this.head;
+		long available = this.cachedTail - h;
+		if (available < maxElements) {
+			int tries = 0;
+			long start = 0;
+			while ((available = (this.cachedTail = this.tail) - h) == 0) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.takeBlockedNanos += System.nanoTime() - start;
+		}
+		final int count = (int) Math.min(available, maxElements);
+		for (int k = 0; k < count; k++) buffer[k] = this.buffer[(int) ((h + k) & this.mask)];
+		HEAD.lazySet(this, h + count);
+		return count;
+	}
+
+	@Override
+	public void putLast(Long value) throws InterruptedException {
+		put(value.longValue());
+	}
+
+	@Override
+	public Long takeFirst() throws InterruptedException {
+		return Long.valueOf(take());
+	}
+
+	@Override
+	public void putFirst(Long value) throws InterruptedException {
+		throw new UnsupportedOperationException("A ring channel is strictly FIFO");
+	}
+
+	@Override
+	public Long takeLast() throws InterruptedException {
+		throw new UnsupportedOperationException("A ring channel is strictly FIFO");
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) throws InterruptedException {
+		if (!this.overflow.offerLast(value)) {
+			final long start = System.nanoTime();
+			try {
+				this.overflow.putLast(value);
+			} finally {
+				this.putBlockedNanos += System.nanoTime() - start;
+			}
+		}
+		this.overflowPuts++;
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) throws InterruptedException {
+		this.overflow.putFirst(value);
+		this.overflowTakes--;
+	}
+
+	@Override
+	public BigInteger takeOverflow() throws InterruptedException {
+		BigInteger value = this.overflow.pollFirst();
+		if (value == null) {
+			final long start = System.nanoTime();
+			try {
+				value = this.overflow.takeFirst();
+			} finally {
+				this.takeBlockedNanos += System.nanoTime() - start;
+			}
+		}
+		this.overflowTakes++;
+		return value;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return this.buffer.length;
+	}
+
+	@Override
+	public long getDepth() {
+		return Math.max(0, getPutCount() - getTakeCount());
+	}
+
+	@Override
+	public long getPutCount() {
+		return this.tail + this.overflowPuts;
+	}
+
+	@Override
+	public long getTakeCount() {
+		return this.head + this.overflowTakes;
+	}
+
+	@Override
+	public long getPutBlockedNanos() {
+		return this.putBlockedNanos;
+	}
+
+	@Override
+	public long getTakeBlockedNanos() {
+		return this.takeBlockedNanos;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
+
+/*
+ * A channel without a buffer: each take is answered by the source node on the taking thread, so a
+ * value exists only once a consumer has asked for it. drainTo moves a single value, to keep the
+ * consumer from asking for more than it uses. Nothing can be put on a pull channel.
+ *
+ * Thread safety policy: a pull network runs on a single thread (the print node's), so a pull channel
+ * is confined to that thread, apart from its take count, which is published with an ordered store.
+ */
+class HammingNetworkPullChannelImpl implements HammingNetworkChannel, HammingNetworkChannelMXBean {
+
+	private static final AtomicLongFieldUpdater<HammingNetworkPullChannelImpl> TAKES =
+			AtomicLongFieldUpdater.newUpdater(HammingNetworkPullChannelImpl.class, "takeCount");
+
+	private final String name;
+	private final HammingNetworkPullSource source;
+	private volatile long takeCount;
+
+	HammingNetworkPullChannelImpl(String name, final HammingNetworkPullSource source) {
+		this.name = name;
+		this.source = source;
+	}
+
+	@Override
+	public long take() throws InterruptedException {
+		final long value = this.source.pull(this);
+		TAKES.lazySet(this, this.takeCount + 1);
+		return value;
+	}
+
+	@Override
+	public Long takeFirst() throws InterruptedException {
+		return Long.valueOf(take());
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException {
+		buffer[0] = take();
+		return 1;
+	}
+
+	@Override
+	public BigInteger takeOverflow() throws InterruptedException {
+		final BigInteger value = this.source.pullOverflow(this);
+		TAKES.lazySet(this, this.takeCount + 1);
+		return value;
+	}
+
+	@Override
+	public void put(long value) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	@Override
+	public void putFirst(Long value) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	@Override
+	public void putLast(Long value) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	@Override
+	public Long takeLast() {
+		throw new UnsupportedOperationException("A pull channel is strictly FIFO");
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A pull channel is filled by its source");
+	}
+
+	/* a value is put the moment it is taken, so a pull channel is always empty and never waits */
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return 0;
+	}
+
+	@Override
+	public long getDepth() {
+		return 0;
+	}
+
+	@Override
+	public long getPutCount() {
+		return this.takeCount;
+	}
+
+	@Override
+	public long getTakeCount() {
+		return this.takeCount;
+	}
+
+	@Override
+	public long getPutBlockedNanos() {
+		return 0;
+	}
+
+	@Override
+	public long getTakeBlockedNanos() {
+		return 0;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
+
+/*
+ * The producer end of a fused edge: a stateless stage (a multiply node) folded into the stage that
+ * feeds it. A put applies the stage's function and puts the result on the target channel, so the value
+ * crosses one channel and one thread instead of two. The overflow lanes and the END pill are carried
+ * over as the multiply node would: a product that no longer fits switches the target to its overflow
+ * lane, and an END goes on whichever lane the target is on. Nothing can be taken from a fused channel;
+ * the consumer reads the target.
+ *
+ * Thread safety policy: a fused channel has a single producer, the thread of the node that feeds it,
+ * and keeps no state but the lane the target is on and a batch buffer, both confined to that thread.
+ */
+class HammingNetworkFusedChannelImpl implements HammingNetworkChannel {
+
+	private final String name;
+	private final Procedure function;
+	private final HammingNetworkChannel target;
+	private long[] products = new long[0];
+	private boolean overflowed;
+
+	HammingNetworkFusedChannelImpl(String name, final Procedure function, final HammingNetworkChannel target) {
+		this.name = name;
+		this.function = function;
+		this.target = target;
+	}
+
+	@Override
+	public void put(long value) throws InterruptedException {
+		if (value == HammingNetworkLongChannel.END) {
+			if (this.overflowed) this.target.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+			else this.target.put(HammingNetworkLongChannel.END);
+			return;
+		}
+		if (value == HammingNetworkLongChannel.OVERFLOW) {
+			switchLanes();
+			return;
+		}
+		if (!this.overflowed) {
+			try {
+				this.target.put(this.function.apply(value));
+				return;
+			} catch (ArithmeticException e) {
+				// the product no longer fits: switch to the overflow lane
+				switchLanes();
+			}
+		}
+		this.target.putOverflow(this.function.apply(BigInteger.valueOf(value)));
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) throws InterruptedException {
+		if (this.products.length < length) this.products = new long[length];
+		int count = 0;
+		for (int k = offset; k < offset + length; k++) {
+			final long value = values[k];
+			if (!this.overflowed && value != HammingNetworkLongChannel.OVERFLOW && value != HammingNetworkLongChannel.END) {
+				try {
+					final long product = this.function.apply(value);
+					this.products[count++] = product;
+					continue;
+				} catch (ArithmeticException e) {
+					// put handles the switch to the overflow lane
+				}
+			}
+			this.target.putAll(this.products, 0, count);
+			count = 0;
+			put(value);
+		}
+		this.target.putAll(this.products, 0, count);
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) throws InterruptedException {
+		// past the 64-bit range the product is too
+		switchLanes();
+		this.target.putOverflow(value == HammingNetworkLongChannel.END_OVERFLOW ? value : this.function.apply(value));
+	}
+
+	private void switchLanes() throws InterruptedException {
+		if (this.overflowed) return;
+		this.target.put(HammingNetworkLongChannel.OVERFLOW);
+		this.overflowed = true;
+	}
+
+	@Override
+	public void putLast(Long value) throws InterruptedException {
+		put(value.longValue());
+	}
+
+	@Override
+	public long take() {
+		throw new UnsupportedOperationException("A fused channel is read through its target " + this.target);
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) {
+		throw new UnsupportedOperationException("A fused channel is read through its target " + this.target);
+	}
+
+	@Override
+	public BigInteger takeOverflow() {
+		throw new UnsupportedOperationException("A fused channel is read through its target " + this.target);
+	}
+
+	@Override
+	public Long takeFirst() {
+		throw new UnsupportedOperationException("A fused channel is read through its target " + this.target);
+	}
+
+	@Override
+	public Long takeLast() {
+		throw new UnsupportedOperationException("A fused channel is read through its target " + this.target);
+	}
+
+	@Override
+	public void putFirst(Long value) {
+		throw new UnsupportedOperationException("A fused channel is strictly FIFO");
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A fused channel is strictly FIFO");
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
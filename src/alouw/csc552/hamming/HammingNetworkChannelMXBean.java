@@ -0,0 +1,27 @@
+package alouw.csc552.hamming;
+
+/*
+ * The runtime metrics of one channel of a running HammingNetwork, as published over JMX under
+ * alouw.csc552.hamming:type=Channel,network=<n>,name=<channel name>.
+ *
+ * Counts include the values of the overflow lane and the OVERFLOW marker. A value pushed back onto a
+ * channel counts as not taken. Blocked times are the total time a producer waited for room (put) or
+ * a consumer waited for a value (take). Every attribute is read without stopping the channel, so the
+ * attributes of one read may be a few values apart from each other.
+ */
+public interface HammingNetworkChannelMXBean {
+
+	public String getName();
+
+	/* the most values the channel holds, Integer.MAX_VALUE if it is unbounded and 0 if it has no buffer */
+	public int getCapacity();
+
+	/* the values put and not yet taken */
+	public long getDepth();
+
+	public long getPutCount();
+	public long getTakeCount();
+
+	public long getPutBlockedNanos();
+	public long getTakeBlockedNanos();
+}
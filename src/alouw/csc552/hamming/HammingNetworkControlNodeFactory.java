@@ -1,375 +1,1078 @@
-package alouw.csc552.hamming;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CyclicBarrier;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import ajeffrey.teaching.debug.Debug;
-
-/*
- * An enum factory for the different types of control nodes in a Hamming Network. A control node
- * is optionally capable of shutting down the entire network once the desired solution is computed.
- * 
- * Control nodes can be started/terminated independently of one another.
- * 
- */
-public enum HammingNetworkControlNodeFactory {
-			
-	MERGE_NODE {
-		public HammingNetworkNode getInstance(
-				final int maxNumbers, HammingNetworkShutdownSignal signal,
-				final long duration, final TimeUnit uom) {
-			return new ThreeInOrderMergeImpl(maxNumbers, signal, duration, uom);
-		}
-	},
-		
-	COLLECT_NODE {
-		public HammingNetworkNode getInstance(
-				final int maxNumbers, HammingNetworkShutdownSignal signal,
-				final long duration, final TimeUnit uom) {
-			return new FourOutCopyImpl(maxNumbers, signal, duration, uom);
-		}
-	},
-		
-	PRINT_NODE {
-		public HammingNetworkNode getInstance(
-				final int maxNumbers, HammingNetworkShutdownSignal signal,
-				final long duration, final TimeUnit uom) {
-			return new PrintNodeImpl(maxNumbers, signal, duration, uom);
-		};
-	};
-	
-	public abstract HammingNetworkNode getInstance(
-			final int maxNumbers, HammingNetworkShutdownSignal signal,
-			final long duration, final TimeUnit uom);
-	
-	final static long TEARDOWN_TIME_MAX_DURATION = 1;
-	final static TimeUnit TEARDOWN_TIME_UOM = TimeUnit.MINUTES;
-}
-
-class FourOutCopyImpl implements HammingNetworkNode {
-	
-	private final int NUM_INPUT_CHANNELS = 1;
-	private final int NUM_OUTPUT_CHANNELS = 4;
-	
-	private final Integer maxNumbers;
-	private final HammingNetworkShutdownSignal signal;
-	
-	private final long runtime_max_duration;
-	private final TimeUnit runtime_uom;
-	
-	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
-	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
-
-	private final ExecutorService workerPool = Executors.newSingleThreadExecutor(
-			new ThreadFactoryWithNamePrefix("FourOutCopyImpl_Worker"));
-	
-	FourOutCopyImpl (final int maxNumbers, HammingNetworkShutdownSignal signal,
-			final long duration, final TimeUnit uom) {
-		this.maxNumbers = maxNumbers;
-		this.signal =  signal;
-		this.runtime_max_duration =  duration;
-		this.runtime_uom = uom;
-	}
-	
-	@Override
-	public void start() {		
-		inputChannels.stream().forEach(i -> {
-			
-			try {
-				i.putLast(Integer.valueOf(1));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} 
-			
-			workerPool.execute(new Runnable() {
-				public void run() {
-					String me = Thread.currentThread().getName();
-					
-					if (Main.DEBUG) Debug.out.breakPoint(me + " starting");
-					
-					for (;;) {
-						try {
-							if (Main.DEBUG) Debug.out.breakPoint(me + " taking.....");
-							final Integer value = i.takeFirst();
-							if (Main.DEBUG) Debug.out.breakPoint(me + " took " + value + " from " + i.toString());
-
-							outputChannels.stream().forEach(o -> {
-								try {
-									o.putLast(value);
-								} catch (Exception e) {
-									Thread.currentThread().interrupt();
-									return;
-								}
-							});
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							return;
-						}
-					}
-				}
-			});
-		});
-		
-		try {
-			workerPool.awaitTermination(this.runtime_max_duration, this.runtime_uom);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			return;
-		}
-	}
-
-	@Override
-	public void shutdown() throws InterruptedException {
-		this.workerPool.shutdownNow();
-		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
-				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
-	}
-
-	@Override
-	public synchronized void addInputChannel(HammingNetworkChannel input) {
-		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
-		inputChannels.add(input);
-	}
-
-	@Override
-	public synchronized void addOutputChannel(HammingNetworkChannel output) {
-		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of four output channels");
-		outputChannels.add(output);
-	}
-
-	@Override
-	public void run() {
-		start();
-	}
-}
-
-class ThreeInOrderMergeImpl implements HammingNetworkNode {
-	
-	private final int NUM_INPUT_CHANNELS = 3;
-	private final int NUM_OUTPUT_CHANNELS = 1;
-	
-	private final Integer maxNumbers;
-	private final HammingNetworkShutdownSignal signal;
-
-	private final long runtime_max_duration;
-	private final TimeUnit runtime_uom;
-	
-	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
-	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
-
-	private final ExecutorService workerPool = Executors.newFixedThreadPool(NUM_INPUT_CHANNELS, 
-			new ThreadFactoryWithNamePrefix("ThreeInOrderMerge_Worker"));
-	
-	private final ConcurrentLinkedQueue<Integer> minValuesRead = new ConcurrentLinkedQueue<>();
-	private final CyclicBarrier mergeBarrier = new CyclicBarrier(NUM_INPUT_CHANNELS, new MergeTask());
-	
-	ThreeInOrderMergeImpl(final int maxNumbers, HammingNetworkShutdownSignal signal,
-			final long duration, final TimeUnit uom) {
-		this.maxNumbers = maxNumbers;
-		this.signal =  signal;
-		this.runtime_max_duration =  duration;
-		this.runtime_uom = uom;
-	}
-	
-	@Override
-	public void start() {
-		inputChannels.stream().forEach(i ->  {
-			workerPool.execute(new Runnable() {
-				public void run() {
-					String me = Thread.currentThread().getName();
-					if (Main.DEBUG) Debug.out.breakPoint(me + " starting");
-					
-					for (;;) { 
-									
-						try {
-							final Integer value = i.takeFirst();
-							minValuesRead.add(value);
-							i.putFirst(value);
-							if (Main.DEBUG) Debug.out.breakPoint(me + " waiting with value " + value + " from " + i.toString());
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							return;
-						}
-						
-						try {
-							mergeBarrier.await();
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							return;
-						} catch (BrokenBarrierException e) {
-							Thread.currentThread().interrupt();
-							return;
-						}
-					}
-				}
-			});
-		});
-		
-		try {
-			workerPool.awaitTermination(this.runtime_max_duration, this.runtime_uom);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			return;
-		}
-	}
-
-	@Override
-	public void shutdown() throws InterruptedException {
-		this.workerPool.shutdownNow();
-		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
-				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
-	}
-
-	@Override
-	public void addInputChannel(HammingNetworkChannel input) {
-		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of three input channels");
-		inputChannels.add(input);
-	}
-
-	@Override
-	public void addOutputChannel(HammingNetworkChannel output) {
-		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of one output channels");
-		outputChannels.add(output);	
-	}
-	
-	class MergeTask implements Runnable {
-
-		@Override
-		public void run() {
-			
-			String me = "MERGE_TASK_" + Thread.currentThread().getName();
-			
-			// step 1: determine the minimum value on offer and remove that value from all source channels
-			final Integer minValueRead = minValuesRead.stream().min(Integer::compareTo).get();
-					
-			if (Main.DEBUG) Debug.out.breakPoint(me + " CONSIDERS  "+ minValueRead + " the MINIMUM");
-			
-			// step 2: remove the head of any input queue equals to minValueRead
-			for (HammingNetworkChannel channel : inputChannels) {
-				try {
-					final Integer readValue = channel.takeFirst();
-					if (readValue.compareTo(minValueRead) > 0) channel.putFirst(readValue);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					return;
-				}
-			}
-						
-			//step 3: write to output channels
-			outputChannels.stream().forEach(o -> {
-				try {
-					o.putLast(minValueRead);
-				} catch (Exception e) {
-					Thread.currentThread().interrupt();
-					return;
-				}
-			});
-			
-			//step 4: cleaup
-			minValuesRead.clear();
-			
-			//step 5: reset the barrier
-		}
-	}
-	
-	@Override
-	public void run() {
-		start();
-	}
-}
-
-class PrintNodeImpl implements HammingNetworkNode {
-	
-	private final int NUM_INPUT_CHANNELS = 1;
-	
-	private final Integer maxNumbers;
-	private final AtomicInteger countNumbers = new AtomicInteger();
-	private final HammingNetworkShutdownSignal signal;
-	
-	private final long runtime_max_duration;
-	private final TimeUnit runtime_uom;
-	
-	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
-
-	private final ExecutorService workerPool = Executors.newSingleThreadExecutor(
-			new ThreadFactoryWithNamePrefix("PrintNodeImpl_Worker"));
-	
-	PrintNodeImpl(final int maxNumbers, HammingNetworkShutdownSignal signal,
-			final long duration, final TimeUnit uom) {
-		this.maxNumbers = maxNumbers;
-		this.signal =  signal;
-		this.runtime_max_duration =  duration;
-		this.runtime_uom = uom;
-		this.countNumbers.set(0);
-	}
-	
-	@Override
-	public void start() {
-		
-		inputChannels.stream().forEach(i -> {
-			workerPool.execute(new Runnable() {
-				public void run() {
-					String me = Thread.currentThread().getName();
-					
-					for (;;) {
-						try {
-							
-							if (Main.DEBUG) Debug.out.breakPoint(me + " taking from "+ i.toString());
-							
-							final Integer value = i.takeFirst();
-							
-							if (Main.DEBUG) Debug.out.breakPoint(me + " took " + value + " from "+ i.toString());
-							
-							if (Integer.valueOf(countNumbers.incrementAndGet()).compareTo(maxNumbers) > 0) {
-								signal.sendShutdown();
-								return;
-							} else {
-								System.out.println(value);
-							}
-						} catch (InterruptedException e) {
-							Thread.currentThread().interrupt();
-							return;
-						}
-					}
-				}
-			});
-		});
-		
-		try {
-			workerPool.awaitTermination(this.runtime_max_duration, this.runtime_uom);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			return;
-		}
-	}
-
-	@Override
-	public void shutdown() throws InterruptedException {
-		this.workerPool.shutdownNow();
-		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
-				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
-	}
-
-	@Override
-	public synchronized void addInputChannel(HammingNetworkChannel input) {
-		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
-		inputChannels.add(input);
-	}
-
-	@Override
-	public synchronized void addOutputChannel(HammingNetworkChannel output) {
-		throw new UnsupportedOperationException("A print node does not have output channels");
-	}
-	
-	@Override
-	public void run() {
-		start();
-	}
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ajeffrey.teaching.debug.Debug;
+
+/*
+ * An enum factory for the different types of control nodes in a Hamming Network. A control node
+ * is optionally capable of shutting down the entire network once the desired solution is computed.
+ * 
+ * Control nodes can be started/terminated independently of one another.
+ * 
+ * PULL_MERGE_NODE and PULL_COLLECT_NODE are the demand-driven merge and copy nodes of a pull network
+ * (see HammingNetworkFlow); they run on the thread of the print node that pulls from them, which is
+ * the ordinary PRINT_NODE.
+ * 
+ */
+public enum HammingNetworkControlNodeFactory {
+			
+	MERGE_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			return new InOrderMergeImpl(maxNumbers, batchSize, mode);
+		}
+	},
+	
+	BARRIER_MERGE_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			// the barrier merge moves one value at a time
+			return new ThreeInOrderMergeImpl(maxNumbers, mode);
+		}
+	},
+		
+	COLLECT_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			return new FanOutCopyImpl(maxNumbers, batchSize, mode);
+		}
+	},
+		
+	PULL_MERGE_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			return new PullInOrderMergeImpl();
+		}
+	},
+	
+	PULL_COLLECT_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			return new PullFanOutCopyImpl();
+		}
+	},
+		
+	PRINT_NODE {
+		public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+				final HammingNetworkExecutionMode mode, final HammingNetworkSink sink) {
+			return new PrintNodeImpl(maxNumbers, batchSize, mode, sink);
+		};
+	};
+	
+	/*
+	 * sink is where a print node writes its numbers; the other control nodes ignore it.
+	 */
+	public abstract HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+			final HammingNetworkExecutionMode mode, final HammingNetworkSink sink);
+	
+	public HammingNetworkNode getInstance(final long maxNumbers, final int batchSize,
+			final HammingNetworkExecutionMode mode) {
+		return getInstance(maxNumbers, batchSize, mode, HammingNetworkSinkFactory.CONSOLE_SINK.getInstance(null));
+	}
+	
+	public HammingNetworkNode getInstance(final long maxNumbers) {
+		return getInstance(maxNumbers, HammingNetwork.DEFAULT_BATCH_SIZE, HammingNetworkExecutionMode.PLATFORM_THREADS);
+	}
+	
+	final static long TEARDOWN_TIME_MAX_DURATION = 1;
+	final static TimeUnit TEARDOWN_TIME_UOM = TimeUnit.MINUTES;
+}
+
+/*
+ * A copy node: every value read from the single input channel is copied to all output channels, 
+ * however many there are. Once it has copied maxNumbers values it ends every output with the END 
+ * pill, and finishes when the pill has come back round to its input.
+ */
+class FanOutCopyImpl implements HammingNetworkNode {
+	
+	private final int NUM_INPUT_CHANNELS = 1;
+	
+	private final long maxNumbers;
+	private final int batchSize;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
+	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>();
+
+	private final ExecutorService workerPool;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	
+	FanOutCopyImpl(final long maxNumbers, final int batchSize, final HammingNetworkExecutionMode mode) {
+		this.workerPool = mode.newWorkerPool("FanOutCopyImpl_Worker", 1);
+		this.maxNumbers = maxNumbers;
+		this.batchSize = batchSize;
+	}
+	
+	@Override
+	public void start() {		
+		inputChannels.stream().forEach(i -> {
+			
+			try {
+				i.put(1L);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			} 
+			
+			workerPool.execute(new Runnable() {
+				public void run() {
+					String me = Thread.currentThread().getName();
+					
+					if (Main.DEBUG) Debug.out.breakPoint(() -> me + " starting");
+					
+					final long[] batch = new long[batchSize];
+					long copied = 0;
+					boolean inputOverflowed = false;
+					boolean outputOverflowed = false;
+					
+					try {
+						while (copied < maxNumbers && !inputOverflowed) {
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " taking.....");
+							final int count = i.drainTo(batch, batchSize);
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " took " + count + " values from " + i.toString());
+							
+							int values = 0;
+							while (values < count && batch[values] != HammingNetworkLongChannel.OVERFLOW) values++;
+							inputOverflowed = values < count;
+							
+							// the sequence ends at maxNumbers: never copy past it
+							final int wanted = (int) Math.min(values, maxNumbers - copied);
+							for (HammingNetworkChannel o : outputChannels) o.putAll(batch, 0, wanted);
+							copied += wanted;
+						}
+						
+						// past the 64-bit range: copy from the overflow lane
+						if (copied < maxNumbers) {
+							for (HammingNetworkChannel o : outputChannels) o.put(HammingNetworkLongChannel.OVERFLOW);
+							outputOverflowed = true;
+						}
+						for (; copied < maxNumbers; copied++) {
+							final BigInteger value = i.takeOverflow();
+							for (HammingNetworkChannel o : outputChannels) o.putOverflow(value);
+						}
+						
+						// end the stream, then wait for the end to come back round the cycle through the merge
+						for (HammingNetworkChannel o : outputChannels) {
+							if (outputOverflowed) o.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+							else o.put(HammingNetworkLongChannel.END);
+						}
+						i.skipToEnd(inputOverflowed);
+						completion.complete(null);
+					} catch (InterruptedException e) {
+						completion.completeExceptionally(e);
+						Thread.currentThread().interrupt();
+					} catch (RuntimeException e) {
+						completion.completeExceptionally(e);
+						throw e;
+					}
+				}
+			});
+		});
+	}
+
+	@Override
+	public void shutdown() throws InterruptedException {
+		this.workerPool.shutdownNow();
+		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
+				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
+	}
+
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return this.completion;
+	}
+
+	@Override
+	public synchronized void addInputChannel(HammingNetworkChannel input) {
+		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
+		inputChannels.add(input);
+	}
+
+	@Override
+	public synchronized void addOutputChannel(HammingNetworkChannel output) {
+		outputChannels.add(output);
+	}
+
+	@Override
+	public boolean hasIdenticalOutputs() {
+		return true;
+	}
+
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * A merge node with three input channels and one worker thread per input, which meet at a barrier once
+ * each has a value: the barrier action (MergeTask) emits the minimum and removes it from every input.
+ * Each run of the barrier action is one merge step in the node's latency histogram.
+ * 
+ * END orders before every number, so the barrier action sees it as soon as one input ends: it then
+ * discards the other inputs up to their END, passes the pill on and completes the node, and every
+ * worker leaves at the barrier.
+ */
+class ThreeInOrderMergeImpl implements HammingNetworkNode, TimedMergeNode {
+	
+	private final int NUM_INPUT_CHANNELS = 3;
+	private final int NUM_OUTPUT_CHANNELS = 1;
+	
+	private final long maxNumbers;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
+	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
+
+	private final ExecutorService workerPool;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	
+	private final ConcurrentLinkedQueue<Long> minValuesRead = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<BigInteger> minOverflowValuesRead = new ConcurrentLinkedQueue<>();
+	private final CyclicBarrier mergeBarrier = new CyclicBarrier(NUM_INPUT_CHANNELS, new MergeTask());
+	private final LatencyHistogram mergeSteps = new LatencyHistogram();
+	private volatile boolean ended = false;
+	
+	ThreeInOrderMergeImpl(final long maxNumbers, final HammingNetworkExecutionMode mode) {
+		this.workerPool = mode.newWorkerPool("ThreeInOrderMerge_Worker", NUM_INPUT_CHANNELS);
+		this.maxNumbers = maxNumbers;
+	}
+	
+	@Override
+	public void start() {
+		inputChannels.stream().forEach(i ->  {
+			workerPool.execute(new Runnable() {
+				public void run() {
+					String me = Thread.currentThread().getName();
+					if (Main.DEBUG) Debug.out.breakPoint(() -> me + " starting");
+					
+					for (;;) { 
+									
+						try {
+							final Long value = i.takeFirst();
+							if (value.longValue() == HammingNetworkLongChannel.OVERFLOW) {
+								final BigInteger bigValue = i.takeOverflow();
+								minOverflowValuesRead.add(bigValue);
+								i.putFirstOverflow(bigValue);
+							}
+							minValuesRead.add(value);
+							i.putFirst(value);
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " waiting with value " + value + " from " + i.toString());
+						} catch (InterruptedException e) {
+							completion.completeExceptionally(e);
+							Thread.currentThread().interrupt();
+							return;
+						}
+						
+						try {
+							mergeBarrier.await();
+							if (ended) return;
+						} catch (InterruptedException e) {
+							completion.completeExceptionally(e);
+							Thread.currentThread().interrupt();
+							return;
+						} catch (BrokenBarrierException e) {
+							completion.completeExceptionally(e);
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			});
+		});
+	}
+
+	@Override
+	public void shutdown() throws InterruptedException {
+		this.workerPool.shutdownNow();
+		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
+				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
+	}
+
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return this.completion;
+	}
+
+	@Override
+	public boolean hasSingleConsumerInputs() {
+		// the merge task takes from, and pushes back onto, every input channel
+		return false;
+	}
+
+	@Override
+	public boolean hasBoundedInputBacklog() {
+		return false;
+	}
+
+	@Override
+	public LatencyHistogram getMergeSteps() {
+		return this.mergeSteps;
+	}
+
+	@Override
+	public void addInputChannel(HammingNetworkChannel input) {
+		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of three input channels");
+		inputChannels.add(input);
+	}
+
+	@Override
+	public void addOutputChannel(HammingNetworkChannel output) {
+		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of one output channels");
+		outputChannels.add(output);	
+	}
+	
+	class MergeTask implements Runnable {
+
+		// only ever touched by the thread tripping the barrier
+		private boolean outputOverflowed = false;
+		
+		@Override
+		public void run() {
+			final long start = System.nanoTime();
+			try {
+				step();
+			} finally {
+				mergeSteps.record(System.nanoTime() - start);
+			}
+		}
+		
+		private void step() {
+			
+			String me = "MERGE_TASK_" + Thread.currentThread().getName();
+			
+			// step 1: determine the minimum value on offer and remove that value from all source channels
+			final Long minValueRead = minValuesRead.stream().min(Long::compareTo).get();
+					
+			if (Main.DEBUG) Debug.out.breakPoint(() -> me + " CONSIDERS  "+ minValueRead + " the MINIMUM");
+			
+			if (minValueRead.longValue() == HammingNetworkLongChannel.END) {
+				end();
+				return;
+			}
+			
+			// every input has left the 64-bit range: merge the overflow lanes instead
+			if (minValueRead.longValue() == HammingNetworkLongChannel.OVERFLOW) {
+				mergeOverflow();
+				minValuesRead.clear();
+				minOverflowValuesRead.clear();
+				return;
+			}
+			
+			// step 2: remove the head of any input queue equals to minValueRead
+			for (HammingNetworkChannel channel : inputChannels) {
+				try {
+					final Long readValue = channel.takeFirst();
+					if (readValue.compareTo(minValueRead) > 0) channel.putFirst(readValue);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+						
+			//step 3: write to output channels
+			outputChannels.stream().forEach(o -> {
+				try {
+					o.put(minValueRead.longValue());
+				} catch (Exception e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			});
+			
+			//step 4: cleaup
+			minValuesRead.clear();
+			minOverflowValuesRead.clear();
+			
+			//step 5: reset the barrier
+		}
+		
+		private void mergeOverflow() {
+			
+			final BigInteger minValueRead = minOverflowValuesRead.stream().min(BigInteger::compareTo).get();
+			
+			if (minValueRead == HammingNetworkLongChannel.END_OVERFLOW) {
+				end();
+				return;
+			}
+			
+			try {
+				if (!this.outputOverflowed) {
+					for (HammingNetworkChannel o : outputChannels) o.put(HammingNetworkLongChannel.OVERFLOW);
+					this.outputOverflowed = true;
+				}
+				
+				for (HammingNetworkChannel channel : inputChannels) {
+					final BigInteger readValue = channel.takeOverflow();
+					if (readValue.compareTo(minValueRead) > 0) channel.putFirstOverflow(readValue);
+				}
+				
+				for (HammingNetworkChannel o : outputChannels) o.putOverflow(minValueRead);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		
+		/* discard every input up to its END, where the workers pushed back their heads, and pass the pill on */
+		private void end() {
+			try {
+				for (HammingNetworkChannel channel : inputChannels) channel.skipToEnd(false);
+				for (HammingNetworkChannel o : outputChannels) {
+					if (this.outputOverflowed) o.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+					else o.put(HammingNetworkLongChannel.END);
+				}
+				ended = true;
+				completion.complete(null);
+			} catch (InterruptedException e) {
+				completion.completeExceptionally(e);
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * A merge node with any number of input channels and a single worker thread.
+ * 
+ * The worker keeps the head of every input in a local array, so each value crosses its channel exactly
+ * once, and picks the minimum head with a loser tree, so each value costs O(log k) comparisons for k
+ * inputs. A value equal to the last one emitted is a duplicate and is dropped. There is no barrier and
+ * no pushing values back onto an input. Once every input has switched to its overflow lane the same
+ * merge continues over BigInteger heads, ordered by a binary heap.
+ * 
+ * Inputs are drained and outputs written in batches. Merged values are flushed before the worker can
+ * block on an input, because the values it is waiting for may depend on the ones it is holding.
+ * 
+ * A merge step in the node's latency histogram is one output batch, from its first value to the end
+ * of its flush; timing single values would cost as much as merging them. Past the 64-bit range, where
+ * values go out one at a time, a step is batchSize consecutive values.
+ */
+class InOrderMergeImpl implements HammingNetworkNode, TimedMergeNode {
+	
+	private final int NUM_OUTPUT_CHANNELS = 1;
+	
+	private final long maxNumbers;
+	private final int batchSize;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>();
+	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
+
+	private final ExecutorService workerPool;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private final LatencyHistogram mergeSteps = new LatencyHistogram();
+	
+	InOrderMergeImpl(final long maxNumbers, final int batchSize, final HammingNetworkExecutionMode mode) {
+		this.workerPool = mode.newWorkerPool("InOrderMerge_Worker", 1);
+		this.maxNumbers = maxNumbers;
+		this.batchSize = batchSize;
+	}
+	
+	@Override
+	public void start() {
+		final HammingNetworkChannel[] inputs = inputChannels.toArray(new HammingNetworkChannel[0]);
+		final HammingNetworkChannel[] outputs = outputChannels.toArray(new HammingNetworkChannel[0]);
+		
+		workerPool.execute(new Runnable() {
+			
+			private final long[][] inputBatches = new long[inputs.length][batchSize];
+			private final int[] inputPositions = new int[inputs.length];
+			private final int[] inputCounts = new int[inputs.length];
+			private final long[] outputBatch = new long[batchSize];
+			private int outputCount = 0;
+			private long batchStart;
+			
+			/* the next value from input c; never blocks while merged values are still held back */
+			private long next(final int c) throws InterruptedException {
+				if (inputPositions[c] == inputCounts[c]) {
+					flush();
+					inputCounts[c] = inputs[c].drainTo(inputBatches[c], batchSize);
+					inputPositions[c] = 0;
+				}
+				return inputBatches[c][inputPositions[c]++];
+			}
+			
+			private void flush() throws InterruptedException {
+				if (outputCount == 0) return;
+				for (HammingNetworkChannel o : outputs) o.putAll(outputBatch, 0, outputCount);
+				outputCount = 0;
+				mergeSteps.record(System.nanoTime() - batchStart);
+			}
+			
+			/* discard input c up to its END; overflowed if it is on the overflow lane */
+			private void skip(final int c, boolean overflowed) throws InterruptedException {
+				while (!overflowed) {
+					final long value = next(c);
+					if (value == HammingNetworkLongChannel.END) return;
+					overflowed = value == HammingNetworkLongChannel.OVERFLOW;
+				}
+				while (inputs[c].takeOverflow() != HammingNetworkLongChannel.END_OVERFLOW);
+			}
+			
+			public void run() {
+				String me = Thread.currentThread().getName();
+				if (Main.DEBUG) Debug.out.breakPoint(() -> me + " starting");
+				
+				try {
+					final long[] heads = new long[inputs.length];
+					for (int c = 0; c < inputs.length; c++) heads[c] = next(c);
+					final LongLoserTree tree = new LongLoserTree(heads);
+					long last = 0;
+					
+					for (;;) {
+						final int winner = tree.winner();
+						final long min = heads[winner];
+						
+						// every input has left the 64-bit range
+						if (min == HammingNetworkLongChannel.OVERFLOW) break;
+						
+						// END orders first: the stream is over, and merged values still held are not needed
+						if (min == HammingNetworkLongChannel.END) {
+							outputCount = 0;
+							for (int c = 0; c < inputs.length; c++) {
+								if (heads[c] != HammingNetworkLongChannel.END) skip(c, heads[c] == HammingNetworkLongChannel.OVERFLOW);
+							}
+							for (HammingNetworkChannel o : outputs) o.put(HammingNetworkLongChannel.END);
+							completion.complete(null);
+							return;
+						}
+						
+						if (min != last) {
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " CONSIDERS  "+ min + " the MINIMUM");
+							if (outputCount == 0) batchStart = System.nanoTime();
+							outputBatch[outputCount++] = min;
+							if (outputCount == batchSize) flush();
+							last = min;
+						}
+						heads[winner] = next(winner);
+						tree.replay(winner);
+					}
+					
+					flush();
+					for (HammingNetworkChannel o : outputs) o.put(HammingNetworkLongChannel.OVERFLOW);
+					
+					final BigInteger[] bigHeads = new BigInteger[inputs.length];
+					final PriorityQueue<Integer> bigTree = new PriorityQueue<>(inputs.length, 
+							(x, y) -> bigHeads[x].compareTo(bigHeads[y]));
+					for (int c = 0; c < inputs.length; c++) {
+						bigHeads[c] = inputs[c].takeOverflow();
+						bigTree.add(c);
+					}
+					BigInteger lastBig = null;
+					
+					for (;;) {
+						final Integer winner = bigTree.poll();
+						final BigInteger min = bigHeads[winner];
+						
+						if (min == HammingNetworkLongChannel.END_OVERFLOW) {
+							for (int c = 0; c < inputs.length; c++) {
+								if (bigHeads[c] != HammingNetworkLongChannel.END_OVERFLOW) skip(c, true);
+							}
+							for (HammingNetworkChannel o : outputs) o.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+							completion.complete(null);
+							return;
+						}
+						
+						if (!min.equals(lastBig)) {
+							if (outputCount == 0) batchStart = System.nanoTime();
+							for (HammingNetworkChannel o : outputs) o.putOverflow(min);
+							lastBig = min;
+							if (++outputCount == batchSize) {
+								mergeSteps.record(System.nanoTime() - batchStart);
+								outputCount = 0;
+							}
+						}
+						bigHeads[winner] = inputs[winner].takeOverflow();
+						bigTree.add(winner);
+					}
+				} catch (InterruptedException e) {
+					completion.completeExceptionally(e);
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					completion.completeExceptionally(e);
+					throw e;
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shutdown() throws InterruptedException {
+		this.workerPool.shutdownNow();
+		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
+				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
+	}
+
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return this.completion;
+	}
+
+	@Override
+	public LatencyHistogram getMergeSteps() {
+		return this.mergeSteps;
+	}
+
+	@Override
+	public boolean hasBoundedInputBacklog() {
+		return false;
+	}
+
+	@Override
+	public synchronized void addInputChannel(HammingNetworkChannel input) {
+		inputChannels.add(input);
+	}
+
+	@Override
+	public synchronized void addOutputChannel(HammingNetworkChannel output) {
+		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of one output channels");
+		outputChannels.add(output);	
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * A loser tree (tournament tree) over an array of long keys, one key per merge input.
+ * 
+ * Leaf c sits at position k + c of an implicit binary tree whose internal nodes 1 .. k-1 each remember
+ * the loser of the match played there; position 0 holds the overall winner. After the winner's key
+ * changes, replay walks from its leaf to the root: one comparison per level, O(log k) in total.
+ * Ties go to the lower input, which keeps the merge deterministic.
+ */
+class LongLoserTree {
+	
+	private final long[] keys;
+	private final int[] losers;
+	private final int k;
+	
+	LongLoserTree(final long[] keys) {
+		this.keys = keys;
+		this.k = keys.length;
+		this.losers = new int[Math.max(this.k, 1)];
+		
+		final int[] winners = new int[2 * this.k];
+		for (int c = 0; c < this.k; c++) winners[this.k + c] = c;
+		for (int n = this.k - 1; n >= 1; n--) {
+			final int left = winners[2 * n];
+			final int right = winners[2 * n + 1];
+			if (beats(right, left)) {
+				winners[n] = right;
+				this.losers[n] = left;
+			} else {
+				winners[n] = left;
+				this.losers[n] = right;
+			}
+		}
+		this.losers[0] = this.k == 1 ? 0 : winners[1];
+	}
+	
+	/* the input holding the smallest key */
+	int winner() {
+		return this.losers[0];
+	}
+	
+	/* restore the tree after the key of the current winner c has changed */
+	void replay(final int c) {
+		int winner = c;
+		for (int n = (this.k + c) >> 1; n >= 1; n >>= 1) {
+			if (beats(this.losers[n], winner)) {
+				final int loser = winner;
+				winner = this.losers[n];
+				this.losers[n] = loser;
+			}
+		}
+		this.losers[0] = winner;
+	}
+	
+	private boolean beats(final int x, final int y) {
+		return this.keys[x] < this.keys[y] || (this.keys[x] == this.keys[y] && x < y);
+	}
+}
+
+/*
+ * A merge node for a pull network: each pull returns the smallest head over all inputs, dropping a
+ * value equal to the last one returned.
+ *
+ * The input that supplied a value is only refilled on the next pull. Refilling it straight away would
+ * ask its multiply node for the copy node's next number, which is the value being returned and is not
+ * in the copy node yet.
+ */
+class PullInOrderMergeImpl implements HammingNetworkNode, HammingNetworkPullSource {
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>();
+	
+	private long[] heads;
+	private LongLoserTree tree;
+	private BigInteger[] bigHeads;
+	private int pending = -1;
+	private long last;
+	private BigInteger lastBig;
+	
+	@Override
+	public long pull(HammingNetworkChannel output) throws InterruptedException {
+		if (this.tree == null) {
+			this.heads = new long[this.inputChannels.size()];
+			for (int c = 0; c < this.heads.length; c++) this.heads[c] = this.inputChannels.get(c).take();
+			this.tree = new LongLoserTree(this.heads);
+		} else if (this.pending >= 0) {
+			refill(this.pending);
+		}
+		
+		for (;;) {
+			final int c = this.tree.winner();
+			final long value = this.heads[c];
+			
+			// every input has left the 64-bit range
+			if (value == HammingNetworkLongChannel.OVERFLOW) {
+				this.pending = -1;
+				return HammingNetworkLongChannel.OVERFLOW;
+			}
+			
+			if (value == this.last) {
+				refill(c);
+				continue;
+			}
+			this.pending = c;
+			this.last = value;
+			return value;
+		}
+	}
+	
+	private void refill(final int c) throws InterruptedException {
+		this.heads[c] = this.inputChannels.get(c).take();
+		this.tree.replay(c);
+	}
+	
+	@Override
+	public BigInteger pullOverflow(HammingNetworkChannel output) throws InterruptedException {
+		if (this.bigHeads == null) {
+			this.bigHeads = new BigInteger[this.inputChannels.size()];
+			for (int c = 0; c < this.bigHeads.length; c++) this.bigHeads[c] = this.inputChannels.get(c).takeOverflow();
+		} else if (this.pending >= 0) {
+			this.bigHeads[this.pending] = this.inputChannels.get(this.pending).takeOverflow();
+		}
+		
+		for (;;) {
+			int c = 0;
+			for (int d = 1; d < this.bigHeads.length; d++) if (this.bigHeads[d].compareTo(this.bigHeads[c]) < 0) c = d;
+			final BigInteger value = this.bigHeads[c];
+			
+			if (value.equals(this.lastBig)) {
+				this.bigHeads[c] = this.inputChannels.get(c).takeOverflow();
+				continue;
+			}
+			this.pending = c;
+			this.lastBig = value;
+			return value;
+		}
+	}
+	
+	/* the work happens on the puller's thread */
+	@Override
+	public void start() {
+	}
+	
+	@Override
+	public void shutdown() {
+	}
+	
+	/* done as soon as it is started: it has no loop of its own */
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return CompletableFuture.completedFuture(null);
+	}
+	
+	@Override
+	public void addInputChannel(HammingNetworkChannel input) {
+		inputChannels.add(input);
+	}
+	
+	@Override
+	public void addOutputChannel(HammingNetworkChannel output) {
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * A copy node for a pull network: one window of the sequence serves every output, each output reading
+ * it through its own cursor. A pull past the newest number takes the next one from the input; numbers
+ * every cursor has passed are dropped, so the window spans the slowest multiply node to the print node.
+ * The window starts with 1, as the push copy node seeds its input with 1.
+ */
+class PullFanOutCopyImpl implements HammingNetworkNode, HammingNetworkPullSource {
+	
+	private final int NUM_INPUT_CHANNELS = 1;
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
+	private final Map<HammingNetworkChannel, long[]> cursors = new HashMap<>();
+	
+	// numbers before end have been taken from the input; the window of longs holds numbers
+	// [smallBase, smallBase + smallLength), the window of BigIntegers numbers [bigBase, end)
+	private long[] small = new long[INITIAL_CAPACITY];
+	private long smallBase = 0;
+	private int smallLength = 1;
+	private final List<BigInteger> big = new ArrayList<>();
+	private long bigBase = Long.MAX_VALUE;
+	private long end = 1;
+	
+	PullFanOutCopyImpl() {
+		this.small[0] = 1;
+	}
+	
+	@Override
+	public long pull(HammingNetworkChannel output) throws InterruptedException {
+		final long[] cursor = this.cursors.get(output);
+		if (cursor[0] == this.end && this.bigBase == Long.MAX_VALUE) fetch();
+		if (cursor[0] >= this.bigBase) return HammingNetworkLongChannel.OVERFLOW;
+		return this.small[(int) (cursor[0]++ - this.smallBase)];
+	}
+	
+	@Override
+	public BigInteger pullOverflow(HammingNetworkChannel output) throws InterruptedException {
+		final long[] cursor = this.cursors.get(output);
+		if (cursor[0] == this.end) fetch();
+		return this.big.get((int) (cursor[0]++ - this.bigBase));
+	}
+	
+	/* take the next number from the input, making room for it first */
+	private void fetch() throws InterruptedException {
+		final HammingNetworkChannel input = this.inputChannels.get(0);
+		
+		if (this.bigBase == Long.MAX_VALUE) {
+			final long value = input.take();
+			if (value == HammingNetworkLongChannel.OVERFLOW) {
+				this.bigBase = this.end;
+				return;
+			}
+			if (this.smallLength == this.small.length) {
+				final int drop = (int) (lowest() - this.smallBase);
+				System.arraycopy(this.small, drop, this.small, 0, this.smallLength - drop);
+				this.smallBase += drop;
+				this.smallLength -= drop;
+				if (this.smallLength == this.small.length) this.small = Arrays.copyOf(this.small, 2 * this.small.length);
+			}
+			this.small[this.smallLength++] = value;
+		} else {
+			final BigInteger value = input.takeOverflow();
+			if (this.big.size() >= INITIAL_CAPACITY) {
+				final long lowest = lowest();
+				if (lowest >= this.bigBase && this.small.length > 0) this.small = new long[0];
+				final int drop = (int) Math.max(0, lowest - this.bigBase);
+				if (drop > this.big.size() / 2) {
+					this.big.subList(0, drop).clear();
+					this.bigBase += drop;
+				}
+			}
+			this.big.add(value);
+		}
+		this.end++;
+	}
+	
+	/* the first number some cursor has not passed */
+	private long lowest() {
+		long lowest = this.end;
+		for (long[] cursor : this.cursors.values()) lowest = Math.min(lowest, cursor[0]);
+		return lowest;
+	}
+	
+	/* the work happens on the puller's thread */
+	@Override
+	public void start() {
+	}
+	
+	@Override
+	public void shutdown() {
+	}
+	
+	/* done as soon as it is started: it has no loop of its own */
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return CompletableFuture.completedFuture(null);
+	}
+	
+	@Override
+	public void addInputChannel(HammingNetworkChannel input) {
+		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
+		inputChannels.add(input);
+	}
+	
+	@Override
+	public void addOutputChannel(HammingNetworkChannel output) {
+		this.cursors.put(output, new long[] {0});
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * The terminal node: writes the first maxNumbers values of its input to a sink, then closes (flushes)
+ * the sink and completes. The network is torn down once every node has completed, not from this
+ * node's worker. The time the first value reached the sink is kept for the network's timings.
+ */
+class PrintNodeImpl implements HammingNetworkNode {
+	
+	private final int NUM_INPUT_CHANNELS = 1;
+	
+	private final long maxNumbers;
+	private final AtomicLong countNumbers = new AtomicLong();
+	private final int batchSize;
+	private final HammingNetworkSink sink;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
+
+	private final ExecutorService workerPool;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private volatile long firstValueNanos;
+	
+	PrintNodeImpl(final long maxNumbers, final int batchSize, final HammingNetworkExecutionMode mode,
+			final HammingNetworkSink sink) {
+		this.workerPool = mode.newWorkerPool("PrintNodeImpl_Worker", 1);
+		this.maxNumbers = maxNumbers;
+		this.batchSize = batchSize;
+		this.sink = sink;
+		this.countNumbers.set(0);
+	}
+	
+	@Override
+	public void start() {
+		
+		inputChannels.stream().forEach(i -> {
+			workerPool.execute(new Runnable() {
+				public void run() {
+					String me = Thread.currentThread().getName();
+					
+					final long[] batch = new long[batchSize];
+					
+					try {
+						if (countNumbers.get() >= maxNumbers) {
+							finish();
+							return;
+						}
+						
+						taking:
+						for (;;) {
+							
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " taking from "+ i.toString());
+							
+							final int count = i.drainTo(batch, batchSize);
+							
+							if (Main.DEBUG) Debug.out.breakPoint(() -> me + " took " + count + " values from "+ i.toString());
+							
+							int values = 0;
+							while (values < count && batch[values] != HammingNetworkLongChannel.OVERFLOW) values++;
+							
+							final int wanted = (int) Math.min(values, maxNumbers - countNumbers.get());
+							if (wanted > 0 && firstValueNanos == 0) firstValueNanos = System.nanoTime();
+							sink.writeAll(batch, 0, wanted);
+							if (countNumbers.addAndGet(wanted) == maxNumbers) {
+								finish();
+								return;
+							}
+							
+							if (values < count) break taking;
+						}
+						
+						// past the 64-bit range: print from the overflow lane
+						for (;;) {
+							final BigInteger value = i.takeOverflow();
+							if (firstValueNanos == 0) firstValueNanos = System.nanoTime();
+							sink.write(value);
+							if (countNumbers.incrementAndGet() == maxNumbers) {
+								finish();
+								return;
+							}
+						}
+					} catch (InterruptedException e) {
+						closeSink();
+						completion.completeExceptionally(e);
+						Thread.currentThread().interrupt();
+					} catch (IOException e) {
+						closeSink();
+						completion.completeExceptionally(new UncheckedIOException(e));
+					} catch (RuntimeException e) {
+						closeSink();
+						completion.completeExceptionally(e);
+						throw e;
+					}
+				}
+			});
+		});
+	}
+
+	/* all numbers written: flush them and report completion */
+	private void finish() throws IOException {
+		this.sink.close();
+		this.completion.complete(null);
+	}
+	
+	@Override
+	public long getFirstValueNanos() {
+		return this.firstValueNanos;
+	}
+	
+	private void closeSink() {
+		try {
+			this.sink.close();
+		} catch (IOException e) {
+			return;
+		}
+	}
+	
+	@Override
+	public void shutdown() throws InterruptedException {
+		this.workerPool.shutdownNow();
+		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
+				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
+	}
+
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return this.completion;
+	}
+
+	@Override
+	public synchronized void addInputChannel(HammingNetworkChannel input) {
+		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
+		inputChannels.add(input);
+	}
+
+	@Override
+	public synchronized void addOutputChannel(HammingNetworkChannel output) {
+		throw new UnsupportedOperationException("A print node does not have output channels");
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package alouw.csc552.hamming;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * How a network and its nodes run their loops.
+ * 
+ * PLATFORM_THREADS gives the network a cached pool and every node its own fixed pool of platform threads.
+ * VIRTUAL_THREADS runs the network and every node loop on virtual threads. The per-node executors are
+ * thread-per-task executors that only track the node's own tasks (so a node can still be shut down on
+ * its own); the threads themselves are all scheduled on the JVM's one shared virtual-thread carrier
+ * pool, so the number of platform threads stays flat however many nodes a topology has.
+ * SHARED_THREADS runs every network and node on one JVM-wide cached pool of platform threads, through
+ * session executors (SessionExecutorImpl) that track and stop only their own tasks. Shutting a network
+ * down interrupts its loops and leaves the threads in the pool, so networks that run concurrently or
+ * one after another in a long-lived process reuse warm threads instead of starting new ones.
+ */
+public enum HammingNetworkExecutionMode {
+
+	PLATFORM_THREADS {
+		public ExecutorService newNetworkPool(final String name) {
+			return Executors.newCachedThreadPool(new ThreadFactoryWithNamePrefix(name));
+		}
+		
+		public ExecutorService newWorkerPool(final String name, final int threads) {
+			if (threads == 1) return Executors.newSingleThreadExecutor(new ThreadFactoryWithNamePrefix(name));
+			return Executors.newFixedThreadPool(threads, new ThreadFactoryWithNamePrefix(name));
+		}
+	},
+	
+	VIRTUAL_THREADS {
+		public ExecutorService newNetworkPool(final String name) {
+			return newWorkerPool(name, 1);
+		}
+		
+		public ExecutorService newWorkerPool(final String name, final int threads) {
+			return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-thread-", 1).factory());
+		}
+	},
+	
+	SHARED_THREADS {
+		public ExecutorService newNetworkPool(final String name) {
+			return new SessionExecutorImpl(SHARED_POOL);
+		}
+		
+		public ExecutorService newWorkerPool(final String name, final int threads) {
+			return new SessionExecutorImpl(SHARED_POOL);
+		}
+	};
+	
+	/* the threads of every SHARED_THREADS network; idle threads are kept for a minute */
+	private static final ExecutorService SHARED_POOL = Executors.newCachedThreadPool(new DaemonThreadFactoryImpl(
+			new ThreadFactoryWithNamePrefix("HammingNetworkShared")));
+	
+	/* a pool for running the network's nodes */
+	public abstract ExecutorService newNetworkPool(final String name);
+	
+	/* a pool for running a node's worker loops; threads is the number of loops the node runs at once */
+	public abstract ExecutorService newWorkerPool(final String name, final int threads);
+}
+
+/*
+ * An executor for the tasks of one network or node, run on a shared pool. shutdownNow interrupts
+ * only the tasks submitted here, and awaitTermination waits only for them; the shared pool and its
+ * threads carry on. A task that had not started by shutdownNow never runs, and is returned.
+ */
+class SessionExecutorImpl extends AbstractExecutorService {
+
+	private final ExecutorService shared;
+	private final Set<Thread> threads = new HashSet<>();
+	private final List<Runnable> pending = new ArrayList<>();
+	private int tasks;
+	private boolean shutdown;
+
+	SessionExecutorImpl(final ExecutorService shared) {
+		this.shared = shared;
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		synchronized (this) {
+			if (this.shutdown) throw new RejectedExecutionException("This session is shut down");
+			this.tasks++;
+			this.pending.add(command);
+		}
+		try {
+			this.shared.execute(() -> run(command));
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				if (this.pending.remove(command)) finished();
+			}
+			throw e;
+		}
+	}
+
+	private void run(final Runnable command) {
+		final Thread thread = Thread.currentThread();
+		synchronized (this) {
+			if (!this.pending.remove(command)) return;
+			this.threads.add(thread);
+		}
+		try {
+			command.run();
+		} finally {
+			synchronized (this) {
+				this.threads.remove(thread);
+			}
+			// the thread goes back to the shared pool without this session's interrupt
+			Thread.interrupted();
+			finished();
+		}
+	}
+
+	private synchronized void finished() {
+		this.tasks--;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		notifyAll();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		final List<Runnable> unstarted;
+		synchronized (this) {
+			this.shutdown = true;
+			unstarted = new ArrayList<>(this.pending);
+			this.tasks -= this.pending.size();
+			this.pending.clear();
+			for (Thread thread : this.threads) thread.interrupt();
+			notifyAll();
+		}
+		return unstarted;
+	}
+
+	@Override
+	public synchronized boolean isShutdown() {
+		return this.shutdown;
+	}
+
+	@Override
+	public synchronized boolean isTerminated() {
+		return this.shutdown && this.tasks == 0;
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (!isTerminated()) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) return false;
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+}
+
+/* marks the threads of another factory as daemons, so that an idle shared pool does not keep the JVM up */
+class DaemonThreadFactoryImpl implements ThreadFactory {
+
+	private final ThreadFactory factory;
+
+	DaemonThreadFactoryImpl(final ThreadFactory factory) {
+		this.factory = factory;
+	}
+
+	@Override
+	public Thread newThread(final Runnable r) {
+		final Thread thread = this.factory.newThread(r);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,23 @@
+package alouw.csc552.hamming;
+
+/*
+ * How values move through a network.
+ *
+ * PUSH runs every node on its own loop, pushing values downstream as fast as the bounded channels
+ * allow. PULL builds the network from demand-driven nodes joined by pull channels
+ * (HammingNetworkPullSource): the print node asks for each value, the request travels upstream through
+ * the copy and merge nodes, and a multiply node computes a product only when the merge asks for it.
+ * The whole pull network runs on the print node's thread, and the only values it holds are the copy
+ * node's window of the sequence between the slowest multiply node and the newest number - the
+ * O(N^(2/3)) frontier of the sequence, held once rather than once per channel.
+ *
+ * FUSED is PUSH after operator fusion: every multiply node is folded into the copy node that feeds it,
+ * which applies the multiplications itself and puts the products straight onto the merge inputs. The
+ * network runs one thread per control node and none per prime, and a value crosses two channels round
+ * the cycle instead of three.
+ */
+public enum HammingNetworkFlow {
+	PUSH,
+	PULL,
+	FUSED
+}
@@ -0,0 +1,49 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+
+/*
+ * A thread-safe, FIFO, blocking channel of primitive long values.
+ * This is the allocation-free counterpart of the boxed HammingNetworkChannel operations: values move
+ * through the channel without a wrapper object per element, and putAll/drainTo amortise the handoff
+ * over a batch of values.
+ * 
+ * Values past the 64-bit range travel on a separate overflow lane. A producer whose values no longer 
+ * fit in a long puts OVERFLOW once on the primitive lane and from then on only uses putOverflow; a 
+ * consumer that takes OVERFLOW switches to takeOverflow for the rest of the stream. OVERFLOW is
+ * Long.MAX_VALUE, which is never a smooth number, so it also orders after every 64-bit value.
+ * 
+ * A stream is ended by a poison pill on whichever lane it is on: END on the primitive lane, or the
+ * END_OVERFLOW instance (compared by identity) on the overflow lane. Both order before every number, 
+ * and a node that takes one passes it on and finishes instead of waiting to be interrupted.
+ */
+public interface HammingNetworkLongChannel {
+
+	public static final long OVERFLOW = Long.MAX_VALUE;
+	public static final long END = Long.MIN_VALUE;
+	public static final BigInteger END_OVERFLOW = new BigInteger("-1");
+	
+	public void put(long value) throws InterruptedException;
+	public long take() throws InterruptedException;
+	
+	/* put values[offset .. offset+length) in order, blocking while the channel is full */
+	public void putAll(long[] values, int offset, int length) throws InterruptedException;
+	
+	/* block until at least one value is available, then move up to maxElements values into buffer
+	 * (starting at index 0) and return how many were moved */
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException;
+	
+	public void putOverflow(BigInteger value) throws InterruptedException;
+	public void putFirstOverflow(BigInteger value) throws InterruptedException;
+	public BigInteger takeOverflow() throws InterruptedException;
+	
+	/* discard values up to and including the end of the stream; overflowed if the consumer is on the overflow lane */
+	public default void skipToEnd(boolean overflowed) throws InterruptedException {
+		while (!overflowed) {
+			final long value = take();
+			if (value == END) return;
+			overflowed = value == OVERFLOW;
+		}
+		while (takeOverflow() != END_OVERFLOW);
+	}
+}
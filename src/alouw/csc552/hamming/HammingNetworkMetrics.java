@@ -0,0 +1,115 @@
+package alouw.csc552.hamming;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ajeffrey.teaching.debug.Debug;
+
+/*
+ * Publishes the nodes and channels of one HammingNetwork as MXBeans on the platform MBean server, from
+ * configure until shutdown, so that a run can be watched with JConsole or any JMX client.
+ *
+ * Nothing here is on the path of a value. Every channel keeps its own counts with single-writer ordered
+ * stores and times only the waits it cannot avoid; node metrics and rates are worked out from the
+ * channels when an attribute is read. The MXBeans are registered on a background thread, since the
+ * first registration in a JVM starts the platform MBean server, which takes longer than a short run.
+ *
+ * Thread safety policy: edges are added by the configuring thread before register; publishing and
+ * unregister are synchronized, and a network shut down before it was published is never published.
+ */
+class HammingNetworkMetrics {
+
+	static final String DOMAIN = "alouw.csc552.hamming";
+
+	private static final AtomicLong networks = new AtomicLong();
+
+	private final long id = networks.incrementAndGet();
+	private final List<String[]> edges = new ArrayList<>();
+	private final List<HammingNetworkChannel> channels = new ArrayList<>();
+	private final List<ObjectName> registered = new ArrayList<>();
+	private boolean published;
+
+	/* the channel from the node named source to the node named target */
+	void addChannel(final String source, final String target, final HammingNetworkChannel channel) {
+		this.edges.add(new String[] {source, target});
+		this.channels.add(channel);
+	}
+
+	void register(final Map<String, HammingNetworkNode> nodes) {
+		final Map<String, HammingNetworkNode> snapshot = new HashMap<>(nodes);
+		synchronized (this) {
+			this.published = true;
+		}
+		Thread.ofPlatform().daemon().name("HammingNetworkMetrics-" + this.id).start(() -> publish(snapshot));
+	}
+
+	synchronized void unregister() {
+		this.published = false;
+		unpublish();
+	}
+
+	private void publish(final Map<String, HammingNetworkNode> nodes) {
+		// outside the lock, so that a shutdown does not wait for the server to start
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (this) {
+			if (!this.published) return;
+			unpublish();
+			try {
+				for (HammingNetworkChannel channel : this.channels) {
+					if (channel instanceof HammingNetworkChannelMXBean) register(server, "Channel", channel.toString(), channel);
+				}
+				for (Map.Entry<String, HammingNetworkNode> node : nodes.entrySet()) {
+					register(server, "Node", node.getKey(), nodeMetrics(node.getKey(), node.getValue()));
+				}
+			} catch (JMException e) {
+				// monitoring must not stop a run
+				if (Main.DEBUG) Debug.out.println("HammingNetwork " + this.id + " not published: " + e);
+			}
+		}
+	}
+
+	private void unpublish() {
+		if (this.registered.isEmpty()) return;
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName name : this.registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (InstanceNotFoundException e) {
+				continue;
+			} catch (JMException e) {
+				if (Main.DEBUG) Debug.out.println("HammingNetwork " + name + " not unpublished: " + e);
+			}
+		}
+		this.registered.clear();
+	}
+
+	private void register(final MBeanServer server, final String type, final String name, final Object bean)
+			throws JMException {
+		final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",network=" + this.id
+				+ ",name=" + name);
+		server.registerMBean(bean, objectName);
+		this.registered.add(objectName);
+	}
+
+	private HammingNetworkNodeMXBean nodeMetrics(final String name, final HammingNetworkNode node) {
+		final List<HammingNetworkChannelMXBean> inputs = new ArrayList<>();
+		final List<HammingNetworkChannelMXBean> outputs = new ArrayList<>();
+		for (int e = 0; e < this.edges.size(); e++) {
+			if (!(this.channels.get(e) instanceof HammingNetworkChannelMXBean)) continue;
+			final HammingNetworkChannelMXBean channel = (HammingNetworkChannelMXBean) this.channels.get(e);
+			if (this.edges.get(e)[0].equals(name)) outputs.add(channel);
+			if (this.edges.get(e)[1].equals(name)) inputs.add(channel);
+		}
+		final LatencyHistogram steps = node instanceof TimedMergeNode ? ((TimedMergeNode) node).getMergeSteps() : null;
+		return new NodeMetricsImpl(name, inputs, outputs, steps);
+	}
+}
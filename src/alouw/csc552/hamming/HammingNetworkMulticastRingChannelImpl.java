@@ -0,0 +1,361 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/*
+ * Cache-line padding for the producer half of HammingNetworkMulticastRingChannelImpl, as for the SPSC
+ * ring (see HammingNetworkChannelFactory). Each consumer cursor is padded like the consumer half of the
+ * SPSC ring.
+ */
+abstract class MulticastRingPadTail {
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class MulticastRingTail extends MulticastRingPadTail {
+	static final AtomicLongFieldUpdater<MulticastRingTail> TAIL =
+			AtomicLongFieldUpdater.newUpdater(MulticastRingTail.class, "tail");
+
+	volatile long tail;
+	long cachedHead;
+	volatile long putBlockedNanos;
+}
+
+abstract class MulticastRingPadEnd extends MulticastRingTail {
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/*
+ * A bounded ring buffer of primitive longs with one producer thread and any number of consumer
+ * threads, each of which reads every value: a fan-out node writes each value once, however many nodes
+ * it feeds, and the backlog is held once rather than once per consumer.
+ *
+ * Thread safety policy: as the SPSC ring, with one head per consumer. Each consumer reads through its
+ * own cursor (newConsumer), which publishes its head with an ordered store; only the producer writes
+ * tail. A slot is free once the slowest consumer has passed it: the producer caches the smallest head
+ * and only re-reads the cursors when the ring looks full. Cursors are added while the network is
+ * configured, before the producer starts.
+ *
+ * Values past the 64-bit range leave the hot path, so each consumer has an overflow deque of its own,
+ * with the ring's capacity; the producer puts the same BigInteger on each.
+ *
+ * Nothing can be taken from the ring itself. The cursors are the channels the consumers read and the
+ * network publishes over JMX.
+ */
+class HammingNetworkMulticastRingChannelImpl extends MulticastRingPadEnd implements HammingNetworkChannel {
+
+	private final String name;
+	final long[] buffer;
+	final int mask;
+	private final HammingNetworkWaitStrategy waitStrategy;
+	private HammingNetworkMulticastCursorImpl[] cursors = new HammingNetworkMulticastCursorImpl[0];
+
+	HammingNetworkMulticastRingChannelImpl(String name, final int capacity, final HammingNetworkWaitStrategy waitStrategy) {
+		if (capacity < 2 || Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Ring capacity must be a power of two");
+		if (waitStrategy == HammingNetworkWaitStrategy.BLOCK)
+			throw new IllegalArgumentException("A ring cannot block: it has no signal");
+		this.name = name;
+		this.buffer = new long[capacity];
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy.forRing();
+	}
+
+	/* a channel that reads every value put on the ring, for one consumer thread */
+	synchronized HammingNetworkChannel newConsumer(String name, final HammingNetworkWaitStrategy waitStrategy) {
+		if (this.tail != 0) throw new IllegalStateException("Consumers join " + this.name + " before it is written to");
+		final HammingNetworkMulticastCursorImpl cursor = new HammingNetworkMulticastCursorImpl(name, this, waitStrategy);
+		this.cursors = Arrays.copyOf(this.cursors, this.cursors.length + 1);
+		this.cursors[this.cursors.length - 1] = cursor;
+		return cursor;
+	}
+
+	/* the head of the slowest consumer, or the tail if there is none */
+	private long slowestHead() {
+		long slowest = this.tail;
+		for (HammingNetworkMulticastCursorImpl cursor : this.cursors) slowest = Math.min(slowest, cursor.head);
+		return slowest;
+	}
+
+	@Override
+	public void put(long value) throws InterruptedException {
+		final long t = this.tail;
+		if (t - this.cachedHead > this.mask) {
+			int tries = 0;
+			long start = 0;
+			while (t - (this.cachedHead = slowestHead()) > this.mask) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.putBlockedNanos += System.nanoTime() - start;
+		}
+		this.buffer[(int) (t & this.mask)] = value;
+		TAIL.lazySet(this, t + 1);
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) throws InterruptedException {
+		final int capacity = this.buffer.length;
+		int done = 0;
+		while (done < length) {
+			final long t = this.tail;
+			long free = capacity - (t - this.cachedHead);
+			if (free < length - done) {
+				int tries = 0;
+				long start = 0;
+				while ((free = capacity - (t - (this.cachedHead = slowestHead()))) == 0) {
+					if (tries == 0) start = System.nanoTime();
+					tries = this.waitStrategy.idle(tries);
+				}
+				if (tries > 0) this.putBlockedNanos += System.nanoTime() - start;
+			}
+			final int count = (int) Math.min(free, length - done);
+			for (int k = 0; k < count; k++) this.buffer[(int) ((t + k) & this.mask)] = values[offset + done + k];
+			TAIL.lazySet(this, t + count);
+			done += count;
+		}
+	}
+
+	@Override
+	public void putLast(Long value) throws InterruptedException {
+		put(value.longValue());
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) throws InterruptedException {
+		for (HammingNetworkMulticastCursorImpl cursor : this.cursors) cursor.deliverOverflow(value);
+	}
+
+	@Override
+	public long take() {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	@Override
+	public BigInteger takeOverflow() {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	@Override
+	public Long takeFirst() {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	@Override
+	public Long takeLast() {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	@Override
+	public void putFirst(Long value) {
+		throw new UnsupportedOperationException("A ring channel is strictly FIFO");
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A multicast ring is read through its consumers");
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
+
+abstract class MulticastCursorPadHead {
+	long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class MulticastCursorHead extends MulticastCursorPadHead {
+	static final AtomicLongFieldUpdater<MulticastCursorHead> HEAD =
+			AtomicLongFieldUpdater.newUpdater(MulticastCursorHead.class, "head");
+
+	volatile long head;
+	long cachedTail;
+	volatile long takeBlockedNanos;
+}
+
+abstract class MulticastCursorPadEnd extends MulticastCursorHead {
+	long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/*
+ * One consumer's view of a multicast ring: its own head into the shared buffer, and its own overflow
+ * lane. It takes like the consumer end of the SPSC ring and waits with its own wait strategy.
+ *
+ * Thread safety policy: only the consumer writes head; the overflow lane is a blocking deque. The put
+ * count and put blocked time are the ring's, shared by every consumer.
+ */
+class HammingNetworkMulticastCursorImpl extends MulticastCursorPadEnd implements HammingNetworkChannel, HammingNetworkChannelMXBean {
+
+	private final String name;
+	private final HammingNetworkMulticastRingChannelImpl ring;
+	private final long[] buffer;
+	private final int mask;
+	private final HammingNetworkWaitStrategy waitStrategy;
+	private final LinkedBlockingDeque<BigInteger> overflow;
+	private volatile long overflowPuts;
+	private volatile long overflowTakes;
+
+	HammingNetworkMulticastCursorImpl(String name, final HammingNetworkMulticastRingChannelImpl ring,
+			final HammingNetworkWaitStrategy waitStrategy) {
+		if (waitStrategy == HammingNetworkWaitStrategy.BLOCK)
+			throw new IllegalArgumentException("A ring cannot block: it has no signal");
+		this.name = name;
+		this.ring = ring;
+		this.buffer = ring.buffer;
+		this.mask = ring.mask;
+		this.waitStrategy = waitStrategy.forRing();
+		this.overflow = new LinkedBlockingDeque<>(this.buffer.length);
+	}
+
+	/* put value on this consumer's overflow lane, on the producer's thread */
+	void deliverOverflow(final BigInteger value) throws InterruptedException {
+		if (!this.overflow.offerLast(value)) {
+			final long start = System.nanoTime();
+			try {
+				this.overflow.putLast(value);
+			} finally {
+				this.ring.putBlockedNanos += System.nanoTime() - start;
+			}
+		}
+		this.overflowPuts++;
+	}
+
+	@Override
+	public long take() throws InterruptedException {
+		final long h = this.head;
+		if (h >= this.cachedTail) {
+			int tries = 0;
+			long start = 0;
+			while (h >= (this.cachedTail = this.ring.tail)) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.takeBlockedNanos += System.nanoTime() - start;
+		}
+		final long value = this.buffer[(int) (h & this.mask)];
+		HEAD.lazySet(this, h + 1);
+		return value;
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException {
+		final long h = this.head;
+		long available = this.cachedTail - h;
+		if (available < maxElements) {
+			int tries = 0;
+			long start = 0;
+			while ((available = (this.cachedTail = this.ring.tail) - h) == 0) {
+				if (tries == 0) start = System.nanoTime();
+				tries = this.waitStrategy.idle(tries);
+			}
+			if (tries > 0) this.takeBlockedNanos += System.nanoTime() - start;
+		}
+		final int count = (int) Math.min(available, maxElements);
+		for (int k = 0; k < count; k++) buffer[k] = this.buffer[(int) ((h + k) & this.mask)];
+		HEAD.lazySet(this, h + count);
+		return count;
+	}
+
+	@Override
+	public Long takeFirst() throws InterruptedException {
+		return Long.valueOf(take());
+	}
+
+	@Override
+	public BigInteger takeOverflow() throws InterruptedException {
+		BigInteger value = this.overflow.pollFirst();
+		if (value == null) {
+			final long start = System.nanoTime();
+			try {
+				value = this.overflow.takeFirst();
+			} finally {
+				this.takeBlockedNanos += System.nanoTime() - start;
+			}
+		}
+		this.overflowTakes++;
+		return value;
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) throws InterruptedException {
+		this.overflow.putFirst(value);
+		this.overflowTakes--;
+	}
+
+	@Override
+	public void put(long value) {
+		throw new UnsupportedOperationException("A multicast consumer is filled by its ring " + this.ring);
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) {
+		throw new UnsupportedOperationException("A multicast consumer is filled by its ring " + this.ring);
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A multicast consumer is filled by its ring " + this.ring);
+	}
+
+	@Override
+	public void putLast(Long value) {
+		throw new UnsupportedOperationException("A multicast consumer is filled by its ring " + this.ring);
+	}
+
+	@Override
+	public void putFirst(Long value) {
+		throw new UnsupportedOperationException("A ring channel is strictly FIFO");
+	}
+
+	@Override
+	public Long takeLast() {
+		throw new UnsupportedOperationException("A ring channel is strictly FIFO");
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return this.buffer.length;
+	}
+
+	@Override
+	public long getDepth() {
+		return Math.max(0, getPutCount() - getTakeCount());
+	}
+
+	@Override
+	public long getPutCount() {
+		return this.ring.tail + this.overflowPuts;
+	}
+
+	@Override
+	public long getTakeCount() {
+		return this.head + this.overflowTakes;
+	}
+
+	@Override
+	public long getPutBlockedNanos() {
+		return this.ring.putBlockedNanos;
+	}
+
+	@Override
+	public long getTakeBlockedNanos() {
+		return this.takeBlockedNanos;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
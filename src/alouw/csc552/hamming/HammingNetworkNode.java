@@ -1,23 +1,59 @@
-package alouw.csc552.hamming;
-
-/* 
- * A node in a Hamming network. All nodes are independent and can communicate with the
- * network only via pre-defined channels.
- * 
- * The start method blocks until the node is done processing.
- */
-public interface HammingNetworkNode extends Runnable{
-
-	/* start the node for processing */
-	public void start();
-	
-	/* shut the node down */
-	public void shutdown() throws InterruptedException;
-	
-	/* the node will read from this channel */
-	public void addInputChannel(HammingNetworkChannel input);
-	
-	/* the node will write to this channel */
-	public void addOutputChannel(HammingNetworkChannel output);
-	
+package alouw.csc552.hamming;
+
+import java.util.concurrent.CompletableFuture;
+
+/* 
+ * A node in a Hamming network. All nodes are independent and can communicate with the
+ * network only via pre-defined channels.
+ * 
+ * The start method launches the node's loops and returns; the node reports that it is done through
+ * its completion future. A node finishes on its own once its input stream ends (see the END poison 
+ * pill of HammingNetworkLongChannel); shutdown is only needed to release its threads, or to interrupt
+ * a node that has not finished.
+ */
+public interface HammingNetworkNode extends Runnable{
+
+	/* start the node for processing */
+	public void start();
+	
+	/* shut the node down, interrupting any loop that has not finished */
+	public void shutdown() throws InterruptedException;
+	
+	/* completes when every loop of the node has finished, exceptionally if one of them failed */
+	public CompletableFuture<Void> getCompletion();
+	
+	/* the node will read from this channel */
+	public void addInputChannel(HammingNetworkChannel input);
+	
+	/* the node will write to this channel */
+	public void addOutputChannel(HammingNetworkChannel output);
+	
+	/* true if each input channel is only ever read, in FIFO order, by a single thread of this node */
+	public default boolean hasSingleConsumerInputs() {
+		return true;
+	}
+	
+	/* true if this node keeps up with each input, so the backlog on an input channel stays bounded */
+	public default boolean hasBoundedInputBacklog() {
+		return true;
+	}
+	
+	/* 
+	 * the function of a stateless stage - one input, one output, one value out per value in - which the
+	 * network may fuse into the node that feeds it; null if the node has to run on its own
+	 */
+	public default Procedure getFusibleFunction() {
+		return null;
+	}
+	
+	/* true if the node writes the same values to every output, which can then share one multicast channel */
+	public default boolean hasIdenticalOutputs() {
+		return false;
+	}
+	
+	/* the System.nanoTime at which the node wrote its first number to a sink, or 0 if it has not (yet) */
+	public default long getFirstValueNanos() {
+		return 0;
+	}
+	
 }
\ No newline at end of file
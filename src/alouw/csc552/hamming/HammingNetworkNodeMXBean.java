@@ -0,0 +1,38 @@
+package alouw.csc552.hamming;
+
+/*
+ * The runtime metrics of one node of a running HammingNetwork, as published over JMX under
+ * alouw.csc552.hamming:type=Node,network=<n>,name=<node name>.
+ *
+ * A node's values are counted by its channels: values in are the values taken from its input channels
+ * and values out the values put on its first output channel (the copy node puts the same values on
+ * every output). Blocked times add up the blocked times of the node's side of its channels.
+ *
+ * The merge step attributes describe the latency of the merge node's steps, in nanoseconds, from a
+ * histogram with power-of-two buckets; a percentile is reported as the upper bound of its bucket.
+ * They are zero for every other node.
+ */
+public interface HammingNetworkNodeMXBean {
+
+	public String getName();
+
+	public long getValuesIn();
+	public long getValuesOut();
+
+	/* values out per second (values in, for a node without outputs) since the previous read of this attribute */
+	public double getValuesPerSecond();
+
+	/* values out per second (values in, for a node without outputs) since the network was configured */
+	public double getAverageValuesPerSecond();
+
+	public long getInputBlockedNanos();
+	public long getOutputBlockedNanos();
+
+	public long getMergeStepCount();
+	public long getMergeStepMedianNanos();
+	public long getMergeStep99thPercentileNanos();
+	public long getMergeStepMaxNanos();
+
+	/* the number of steps per bucket: bucket b counts the steps of 2^(b-1) up to 2^b - 1 nanoseconds */
+	public long[] getMergeStepHistogram();
+}
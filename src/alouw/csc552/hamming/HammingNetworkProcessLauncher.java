@@ -0,0 +1,325 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Runs a push network with every node in a JVM of its own, the nodes connected by sockets, so that a
+ * large run spreads its heap and its garbage collection over one process per stage.
+ *
+ *   java -cp core/target/hamming-core-*.jar alouw.csc552.hamming.HammingNetworkProcessLauncher
+ *        [numbers] [primes] [port | socket directory] [sink]
+ *
+ * The launcher starts a node process for each node of the network HammingNetwork.configure builds (a
+ * merge, a copy, a print and one multiply node per prime), with the launcher's own JVM options and
+ * class path, waits for all of them to exit and prints the wall time. Every edge is a socket (see
+ * HammingNetworkSocketChannelImpl) that its target listens on: on the loopback address, at the given
+ * port plus the edge's index in the topology, or as <edge>.sock in the given directory, by default a
+ * fresh temporary one. sink names a HammingNetworkSinkFactory (Main.SINK by default) writing to
+ * Main.OUTPUT; the console sink prints on the launcher's console.
+ *
+ * A node process listens on its inputs, connects to its outputs, retrying until their targets listen,
+ * and then accepts its inputs, so the processes can start in any order. The node writes straight to
+ * its output sockets, but reads every input from a channel of its own process, which a thread per
+ * input fills from the socket: the copy node seeds its input and the merge node pushes values back
+ * onto its inputs, neither of which a socket can take. The channel is the one the channel factory
+ * gives the edge (see HammingNetworkChannelFactory), except that a merge input is unbounded, since the
+ * merge waits on one input while the others back up further than a socket's buffers hold. The run
+ * ends with the END pill, as it does in one JVM; each process then closes its sockets and exits.
+ *
+ * A node process that fails, or has not finished within Main.MAX_SOLUTION_DURATION, exits with a
+ * non-zero status, and the launcher then stops every other one.
+ */
+public class HammingNetworkProcessLauncher {
+
+	static final String NODE_OPTION = "--node";
+	private static final long CONNECT_RETRY_MILLIS = 10;
+	private static final HammingNetworkChannelFactory channelFactory = new HammingNetworkChannelFactory();
+
+	public static void main(final String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals(NODE_OPTION)) {
+			boolean completed = false;
+			try {
+				completed = runNode(Arrays.copyOfRange(args, 1, args.length));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			// the node's threads must not keep a failed process alive
+			System.exit(completed ? 0 : 1);
+		}
+
+		final long numbers = args.length > 0 ? Long.parseLong(args[0]) : Main.NUM_HAMMING_NUMBERS;
+		final String primes = args.length > 1 ? args[1]
+				: HammingNetwork.DEFAULT_PRIMES.stream().map(String::valueOf).collect(Collectors.joining(","));
+		final Path directory = args.length > 2 ? null : Files.createTempDirectory("hamming-network");
+		final String where = args.length > 2 ? args[2] : directory.toString();
+		final String sink = args.length > 3 ? args[3] : Main.SINK.name();
+		HammingGeneratorFactory.checkPrimes(HammingGeneratorFactory.parsePrimes(primes));
+		HammingNetworkSinkFactory.valueOf(sink);
+
+		final List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+				HammingNetworkProcessLauncher.class.getName(), NODE_OPTION));
+
+		final long startTime = System.currentTimeMillis();
+		final Map<String, Process> processes = new LinkedHashMap<>();
+		final boolean completed;
+		try {
+			for (String node : nodes(HammingGeneratorFactory.parsePrimes(primes))) {
+				final List<String> nodeCommand = new ArrayList<>(command);
+				nodeCommand.addAll(Arrays.asList(node, String.valueOf(numbers), primes, where, sink));
+				processes.put(node, new ProcessBuilder(nodeCommand).inheritIO().start());
+			}
+			completed = awaitAll(processes);
+		} finally {
+			for (Process process : processes.values()) process.destroyForcibly();
+			if (directory != null) delete(directory);
+		}
+
+		final long endTime = System.currentTimeMillis();
+
+		System.out.println("");
+		System.out.println("Duration: " + (endTime - startTime)/1000.0 + " Seconds");
+		if (!completed) System.exit(1);
+	}
+
+	/* wait for every node process to exit; false as soon as one fails, or if they are not done in time */
+	private static boolean awaitAll(final Map<String, Process> processes) throws InterruptedException {
+		final CompletableFuture<String> failed = new CompletableFuture<>();
+		final List<CompletableFuture<Void>> exits = new ArrayList<>();
+		for (Map.Entry<String, Process> node : processes.entrySet()) {
+			exits.add(node.getValue().onExit().thenAccept(process -> {
+				if (process.exitValue() != 0) failed.complete(node.getKey());
+			}));
+		}
+		try {
+			CompletableFuture.anyOf(CompletableFuture.allOf(exits.toArray(new CompletableFuture<?>[0])), failed)
+					.get(Main.MAX_SOLUTION_DURATION, Main.MAX_SOLUTION_DURATION_UOM);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (TimeoutException e) {
+			System.err.println("The network did not finish in " + Main.MAX_SOLUTION_DURATION + " "
+					+ Main.MAX_SOLUTION_DURATION_UOM);
+			return false;
+		}
+		if (!failed.isDone()) return true;
+		System.err.println("Node " + failed.join() + " failed");
+		return false;
+	}
+
+	/*
+	 * Run the node named args[0] of the network generating args[1] numbers on the primes args[2], its
+	 * sockets at args[3] and its sink (if it is the print node) args[4]; true if it completed.
+	 */
+	private static boolean runNode(final String[] args) throws IOException, InterruptedException {
+		final String name = args[0];
+		final long numbers = Long.parseLong(args[1]);
+		final List<Long> primes = HammingGeneratorFactory.parsePrimes(args[2]);
+		final String where = args[3];
+		final HammingNetworkSinkFactory sink = HammingNetworkSinkFactory.valueOf(args[4]);
+		final long deadline = System.nanoTime() + Main.MAX_SOLUTION_DURATION_UOM.toNanos(Main.MAX_SOLUTION_DURATION);
+
+		final List<String[]> edges = HammingNetwork.topology(merge(primes), copy(primes), primes);
+		final HammingNetworkNode node = newNode(name, numbers, primes, sink);
+		final HammingNetworkMetrics metrics = new HammingNetworkMetrics();
+		final Map<String[], ServerSocketChannel> listeners = new LinkedHashMap<>();
+		final List<HammingNetworkSocketChannelImpl> sockets = new ArrayList<>();
+		final List<Runnable> readers = new ArrayList<>();
+		final List<CompletableFuture<Void>> completions = new ArrayList<>();
+		final ExecutorService readerPool = Executors.newCachedThreadPool(new ThreadFactoryWithNamePrefix(name + "-reader"));
+		try {
+			// listen on every input before connecting any output, so that no two processes wait on each other
+			for (int e = 0; e < edges.size(); e++) {
+				if (edges.get(e)[1].equals(name)) listeners.put(edges.get(e), listen(address(where, e, edges.get(e))));
+			}
+			for (int e = 0; e < edges.size(); e++) {
+				final String[] edge = edges.get(e);
+				if (!edge[0].equals(name)) continue;
+				final HammingNetworkSocketChannelImpl channel = channelFactory.getSocketChannelInstance(
+						edge[0] + "_to_" + edge[1], connect(address(where, e, edge), deadline));
+				sockets.add(channel);
+				node.addOutputChannel(channel);
+				metrics.addChannel(edge[0], edge[1], channel);
+			}
+			for (Map.Entry<String[], ServerSocketChannel> listener : listeners.entrySet()) {
+				final String[] edge = listener.getKey();
+				final HammingNetworkSocketChannelImpl channel = channelFactory.getSocketChannelInstance(
+						edge[0] + "_to_" + edge[1], listener.getValue().accept());
+				listener.getValue().close();
+				sockets.add(channel);
+				metrics.addChannel(edge[0], edge[1], channel);
+				// the source is in another process
+				final HammingNetworkChannel local = HammingNetworkChannelFactory.ringEdge(node)
+						? channelFactory.getChannelInstance(channel + "_local", null, node)
+						: channelFactory.getChannelInstance(channel + "_local");
+				node.addInputChannel(local);
+				readers.add(() -> {
+					try {
+						forward(channel, local);
+					} catch (InterruptedException e) {
+						throw new CompletionException(e);
+					}
+				});
+			}
+
+			metrics.register(Collections.singletonMap(name, node));
+			// the readers start once the node has seeded its inputs
+			node.start();
+			completions.add(node.getCompletion());
+			for (Runnable reader : readers) completions.add(CompletableFuture.runAsync(reader, readerPool));
+			CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0]))
+					.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+			// in two passes, see HammingNetworkSocketChannelImpl
+			for (HammingNetworkSocketChannelImpl socket : sockets) socket.shutdownOutput();
+			for (HammingNetworkSocketChannelImpl socket : sockets) socket.close();
+			return true;
+		} catch (ExecutionException e) {
+			System.err.println("Node " + name + ": " + e.getCause());
+			return false;
+		} catch (TimeoutException e) {
+			System.err.println("Node " + name + " did not finish in " + Main.MAX_SOLUTION_DURATION + " "
+					+ Main.MAX_SOLUTION_DURATION_UOM);
+			return false;
+		} finally {
+			node.shutdown();
+			readerPool.shutdownNow();
+			metrics.unregister();
+			for (ServerSocketChannel listener : listeners.values()) listener.close();
+		}
+	}
+
+	/* copy the stream on input to output, up to and including its END */
+	private static void forward(final HammingNetworkChannel input, final HammingNetworkChannel output)
+			throws InterruptedException {
+		final long[] batch = new long[HammingNetwork.DEFAULT_BATCH_SIZE];
+		while (true) {
+			final int count = input.drainTo(batch, batch.length);
+			output.putAll(batch, 0, count);
+			// END and OVERFLOW are the last values of the primitive lane
+			if (batch[count - 1] == HammingNetworkLongChannel.END) return;
+			if (batch[count - 1] == HammingNetworkLongChannel.OVERFLOW) break;
+		}
+		BigInteger value;
+		do {
+			value = input.takeOverflow();
+			output.putOverflow(value);
+		} while (value != HammingNetworkLongChannel.END_OVERFLOW);
+	}
+
+	private static String merge(final List<Long> primes) {
+		return "merge" + primes.size();
+	}
+
+	private static String copy(final List<Long> primes) {
+		return "copy" + (primes.size() + 1);
+	}
+
+	/* the nodes of the network, in the order of its topology */
+	private static Set<String> nodes(final List<Long> primes) {
+		final Set<String> nodes = new LinkedHashSet<>();
+		for (String[] edge : HammingNetwork.topology(merge(primes), copy(primes), primes)) {
+			nodes.add(edge[0]);
+			nodes.add(edge[1]);
+		}
+		return nodes;
+	}
+
+	/* the node named name, as HammingNetwork.configure creates it for a push network */
+	private static HammingNetworkNode newNode(final String name, final long numbers, final List<Long> primes,
+			final HammingNetworkSinkFactory sink) {
+		if (name.equals(merge(primes))) {
+			return HammingNetworkControlNodeFactory.MERGE_NODE.getInstance(numbers, HammingNetwork.DEFAULT_BATCH_SIZE,
+					Main.EXECUTION_MODE);
+		}
+		if (name.equals(copy(primes))) {
+			return HammingNetworkControlNodeFactory.COLLECT_NODE.getInstance(numbers, HammingNetwork.DEFAULT_BATCH_SIZE,
+					Main.EXECUTION_MODE);
+		}
+		if (name.equals("print1")) {
+			return HammingNetworkControlNodeFactory.PRINT_NODE.getInstance(numbers, HammingNetwork.DEFAULT_BATCH_SIZE,
+					Main.EXECUTION_MODE, sink.getInstance(Main.OUTPUT));
+		}
+		for (Long prime : primes) {
+			if (!name.equals("mult" + prime)) continue;
+			return new HammingNetworkWorkerNodeFactory().getInstance(HammingNetwork.multiplyBy(prime.longValue()),
+					"times" + prime, HammingNetwork.DEFAULT_BATCH_SIZE, Main.EXECUTION_MODE);
+		}
+		throw new IllegalArgumentException("The network on " + primes + " has no node " + name);
+	}
+
+	/* where the target of edge e listens: a loopback port counted from where, or a socket in the directory where */
+	private static SocketAddress address(final String where, final int e, final String[] edge) {
+		if (where.chars().allMatch(Character::isDigit)) {
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(where) + e);
+		}
+		return UnixDomainSocketAddress.of(Paths.get(where, edge[0] + "_to_" + edge[1] + ".sock"));
+	}
+
+	private static ServerSocketChannel listen(final SocketAddress address) throws IOException {
+		if (address instanceof UnixDomainSocketAddress) Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		final ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+		try {
+			server.bind(address);
+		} catch (IOException e) {
+			server.close();
+			throw e;
+		}
+		return server;
+	}
+
+	/* connect to address, retrying until something listens there or the deadline has passed */
+	private static SocketChannel connect(final SocketAddress address, final long deadline)
+			throws IOException, InterruptedException {
+		while (true) {
+			final SocketChannel socket = address instanceof UnixDomainSocketAddress
+					? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+			try {
+				socket.connect(address);
+				return socket;
+			} catch (IOException e) {
+				socket.close();
+				if (System.nanoTime() - deadline > 0) throw e;
+				Thread.sleep(CONNECT_RETRY_MILLIS);
+			}
+		}
+	}
+
+	private static void delete(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+		}
+		Files.deleteIfExists(directory);
+	}
+}
@@ -0,0 +1,19 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+
+/*
+ * A node that computes values on demand. In a pull network every channel is a pull channel: a take
+ * on it asks the channel's source for the next value for that channel, and the source takes from its
+ * own inputs only as far as it needs to answer. The OVERFLOW protocol of HammingNetworkLongChannel
+ * applies unchanged: pull returns OVERFLOW once, and from then on the channel is read with
+ * pullOverflow.
+ */
+public interface HammingNetworkPullSource {
+
+	/* the next value for output */
+	public long pull(HammingNetworkChannel output) throws InterruptedException;
+
+	/* the next value past the 64-bit range for output */
+	public BigInteger pullOverflow(HammingNetworkChannel output) throws InterruptedException;
+}
@@ -1,19 +0,0 @@
-package alouw.csc552.hamming;
-
-/*
- * An object for encapsulating the kill signal for a Hamming Network.
- */
-public class HammingNetworkShutdownSignal {
-	
-	private volatile HammingNetwork network;
-	
-	public HammingNetworkShutdownSignal () {};
-	
-	public void attachNetwork(HammingNetwork network) {
-		this.network = network;
-	}
-	
-	public void sendShutdown() {
-		this.network.shutdown();
-	}
-}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package alouw.csc552.hamming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+
+/*
+ * The destination of the numbers a generator produces: the print node of a network or the sequential
+ * engine writes every number it emits to a sink, in ascending order.
+ *
+ * Numbers that fit in 64 bits are written as longs; every later number as a BigInteger. A sink may
+ * buffer its output: close flushes it, and releases the underlying file if the sink owns one.
+ *
+ * A sink is used by one thread at a time.
+ */
+public interface HammingNetworkSink extends Closeable {
+
+	public void write(long value) throws IOException;
+
+	/* write values[offset] .. values[offset + length - 1] */
+	public default void writeAll(long[] values, int offset, int length) throws IOException {
+		for (int k = offset; k < offset + length; k++) write(values[k]);
+	}
+
+	public void write(BigInteger value) throws IOException;
+
+	/* write out any buffered output */
+	public void flush() throws IOException;
+}
@@ -0,0 +1,257 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/*
+ * An enum factory for the sinks a generator writes its numbers to.
+ *
+ *   CONSOLE_SINK:     one number per line on System.out (the path is ignored)
+ *   TEXT_FILE_SINK:   one number per line in the file at path
+ *   BINARY_FILE_SINK: fixed-width little-endian longs in the file at path; see BinarySinkImpl for
+ *                     numbers past the 64-bit range
+ *   CHECKSUM_SINK:    writes nothing but a count and a checksum of the numbers on close (the path is
+ *                     ignored), so that output costs next to nothing in a benchmark
+ *
+ * The text and binary sinks format numbers straight into a 64 KiB buffer and hand it to the channel
+ * in one write when it fills, instead of a synchronized, auto-flushing println per number.
+ */
+public enum HammingNetworkSinkFactory {
+
+	CONSOLE_SINK {
+		public HammingNetworkSink getInstance(final Path path) {
+			return new TextSinkImpl(Channels.newChannel(System.out), false);
+		}
+	},
+
+	TEXT_FILE_SINK {
+		public HammingNetworkSink getInstance(final Path path) {
+			return new TextSinkImpl(open(path), true);
+		}
+	},
+
+	BINARY_FILE_SINK {
+		public HammingNetworkSink getInstance(final Path path) {
+			return new BinarySinkImpl(open(path));
+		}
+	},
+
+	CHECKSUM_SINK {
+		public HammingNetworkSink getInstance(final Path path) {
+			return new ChecksumSinkImpl();
+		}
+	};
+
+	public abstract HammingNetworkSink getInstance(final Path path);
+
+	final static int BUFFER_SIZE = 64 * 1024;
+
+	private static FileChannel open(final Path path) {
+		Objects.requireNonNull(path, "A file sink needs a path");
+		try {
+			return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot open " + path, e);
+		}
+	}
+}
+
+/*
+ * A sink that collects its output in a heap buffer and writes the buffer to a channel when it fills.
+ * The channel is closed with the sink only if the sink owns it.
+ */
+abstract class BufferedSinkImpl implements HammingNetworkSink {
+
+	protected final ByteBuffer buffer = ByteBuffer.allocate(HammingNetworkSinkFactory.BUFFER_SIZE);
+	private final WritableByteChannel channel;
+	private final boolean ownsChannel;
+
+	BufferedSinkImpl(final WritableByteChannel channel, final boolean ownsChannel) {
+		this.channel = channel;
+		this.ownsChannel = ownsChannel;
+	}
+
+	/* make room for at least bytes more bytes, which must not exceed the buffer size */
+	protected final void reserve(final int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes) drain();
+	}
+
+	/* write bytes through the buffer, or straight to the channel if they would not fit in it */
+	protected final void put(final byte[] bytes) throws IOException {
+		if (bytes.length <= this.buffer.capacity()) {
+			reserve(bytes.length);
+			this.buffer.put(bytes);
+		} else {
+			drain();
+			final ByteBuffer direct = ByteBuffer.wrap(bytes);
+			while (direct.hasRemaining()) this.channel.write(direct);
+		}
+	}
+
+	private void drain() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (this.ownsChannel) this.channel.close();
+		}
+	}
+}
+
+/*
+ * One number per line in ASCII decimal. Longs are formatted digit by digit into the buffer, without
+ * an intermediate String.
+ */
+class TextSinkImpl extends BufferedSinkImpl {
+
+	private static final int MAX_LINE = 21;
+
+	private final byte[] digits = new byte[MAX_LINE];
+
+	TextSinkImpl(final WritableByteChannel channel, final boolean ownsChannel) {
+		super(channel, ownsChannel);
+	}
+
+	@Override
+	public void write(long value) throws IOException {
+		reserve(MAX_LINE);
+		if (value < 0) {
+			this.buffer.put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+		} else {
+			int start = this.digits.length;
+			do {
+				this.digits[--start] = (byte) ('0' + value % 10);
+				value /= 10;
+			} while (value != 0);
+			this.buffer.put(this.digits, start, this.digits.length - start);
+		}
+		this.buffer.put((byte) '\n');
+	}
+
+	@Override
+	public void write(BigInteger value) throws IOException {
+		put(value.toString().getBytes(StandardCharsets.US_ASCII));
+		reserve(1);
+		this.buffer.put((byte) '\n');
+	}
+}
+
+/*
+ * Fixed-width little-endian longs, eight bytes per number. Numbers past the 64-bit range cannot be
+ * fixed-width: the first of them is preceded by one OVERFLOW (Long.MAX_VALUE) marker, and each is
+ * written as a little-endian int byte count followed by its two's complement bytes, least
+ * significant first.
+ */
+class BinarySinkImpl extends BufferedSinkImpl {
+
+	private boolean overflowed;
+
+	BinarySinkImpl(final WritableByteChannel channel) {
+		super(channel, true);
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public void write(long value) throws IOException {
+		reserve(Long.BYTES);
+		this.buffer.putLong(value);
+	}
+
+	@Override
+	public void writeAll(long[] values, int offset, int length) throws IOException {
+		int done = 0;
+		while (done < length) {
+			reserve(Long.BYTES);
+			final int count = Math.min(length - done, this.buffer.remaining() / Long.BYTES);
+			this.buffer.asLongBuffer().put(values, offset + done, count);
+			this.buffer.position(this.buffer.position() + count * Long.BYTES);
+			done += count;
+		}
+	}
+
+	@Override
+	public void write(BigInteger value) throws IOException {
+		if (!this.overflowed) {
+			write(HammingNetworkLongChannel.OVERFLOW);
+			this.overflowed = true;
+		}
+		final byte[] bytes = value.toByteArray();
+		for (int i = 0, j = bytes.length - 1; i < j; i++, j--) {
+			final byte swap = bytes[i];
+			bytes[i] = bytes[j];
+			bytes[j] = swap;
+		}
+		reserve(Integer.BYTES);
+		this.buffer.putInt(bytes.length);
+		put(bytes);
+	}
+}
+
+/*
+ * Counts the numbers and folds them into a checksum, checksum = 31 * checksum + (low 64 bits of the
+ * number), which does not depend on whether a number arrived as a long or as a BigInteger. Prints the
+ * two on close.
+ */
+class ChecksumSinkImpl implements HammingNetworkSink {
+
+	private long count;
+	private long checksum;
+
+	@Override
+	public void write(long value) {
+		this.count++;
+		this.checksum = 31 * this.checksum + value;
+	}
+
+	@Override
+	public void writeAll(long[] values, int offset, int length) {
+		long checksum = this.checksum;
+		for (int k = offset; k < offset + length; k++) checksum = 31 * checksum + values[k];
+		this.checksum = checksum;
+		this.count += length;
+	}
+
+	@Override
+	public void write(BigInteger value) {
+		write(value.longValue());
+	}
+
+	long count() {
+		return this.count;
+	}
+
+	long checksum() {
+		return this.checksum;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+		System.out.println("Count: " + this.count + ", checksum: " + Long.toHexString(this.checksum));
+	}
+}
@@ -0,0 +1,321 @@
+package alouw.csc552.hamming;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SocketChannel;
+
+/*
+ * One end of a channel between two processes, over a connected loopback TCP or Unix-domain socket. The
+ * producer writes to its end and the consumer reads from the other; the socket's buffers, and a write
+ * buffer at the producer's end, take the place of the channel's.
+ *
+ * Values travel in frames, big-endian, each starting with an int tag:
+ *
+ *   tag > 0:  a batch of tag longs on the primitive lane, END and OVERFLOW included
+ *   tag < 0:  one value on the overflow lane, the -tag bytes of its BigInteger.toByteArray
+ *   tag == 0: END_OVERFLOW
+ *
+ * A put encodes its frame (a putAll one frame per FRAME_VALUES values) into the write buffer, and a
+ * writer thread of the channel's own writes the buffer to the socket whenever it holds anything. The
+ * frames put while one write is in the kernel go out together in the next, so the values a node puts
+ * one at a time - every value of the overflow lane - share their system calls, without a timer and
+ * without a value held back from the consumer. A producer waits while the write buffer is full. A take
+ * decodes from a read buffer that each socket read fills as far as it can.
+ *
+ * A socket end is strictly FIFO: putFirst, putFirstOverflow and takeLast are not supported, so a
+ * consumer that pushes values back, or seeds its own input, reads through a channel of its own process
+ * instead. An interrupt during a read closes the socket, as it does any interruptible channel, and
+ * surfaces as an InterruptedException; any other I/O failure, on either side, as an
+ * UncheckedIOException. The wait strategies do not apply: a side that cannot make progress blocks.
+ *
+ * shutdownOutput writes what has been put and ends the stream; close does so too, then discards what
+ * the other end still sends until it has closed as well, so that no write is refused by a socket closed
+ * with data unread. A process holding several ends shuts the output of each down before it closes any,
+ * or two processes each closing one end before the other would wait on each other.
+ *
+ * Thread safety policy: the write buffer is guarded by the channel's monitor, which the producer holds
+ * to encode a frame and the writer thread to take the buffer in exchange for an empty one; the socket
+ * writes are the writer thread's alone. The reading side is confined to one consumer thread. The
+ * counters are volatile, each written by one thread. The socket's capacity and depth belong to the
+ * kernel, so both are reported as 0; the put blocked time is the time a producer waited for room in
+ * the write buffer, and the take blocked time the time spent in socket reads, copies included.
+ */
+class HammingNetworkSocketChannelImpl implements HammingNetworkChannel, HammingNetworkChannelMXBean, Closeable {
+
+	static final int FRAME_VALUES = 8192;
+	private static final int TAG_BYTES = Integer.BYTES;
+	private static final int BUFFER_BYTES = TAG_BYTES + FRAME_VALUES * Long.BYTES;
+
+	private final String name;
+	private final SocketChannel socket;
+	private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_BYTES);
+	private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES).flip();
+	private Thread writer;
+	private boolean outputShutdown;
+	private IOException writeFailure;
+	/* the values of the current primitive batch not yet taken */
+	private int batchRemaining;
+	private volatile long putCount;
+	private volatile long takeCount;
+	private volatile long putBlockedNanos;
+	private volatile long takeBlockedNanos;
+
+	HammingNetworkSocketChannelImpl(String name, final SocketChannel socket) {
+		if (!socket.isBlocking()) throw new IllegalArgumentException("A socket channel needs a blocking socket: " + name);
+		this.name = name;
+		this.socket = socket;
+		try {
+			// a write goes out as it is made, not held back for the next one
+			if (socket.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
+				socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void put(long value) throws InterruptedException {
+		synchronized (this) {
+			reserve(TAG_BYTES + Long.BYTES).putInt(1).putLong(value);
+		}
+		this.putCount++;
+	}
+
+	@Override
+	public void putAll(long[] values, int offset, int length) throws InterruptedException {
+		for (int done = 0; done < length;) {
+			final int count = Math.min(FRAME_VALUES, length - done);
+			synchronized (this) {
+				final ByteBuffer frame = reserve(TAG_BYTES + count * Long.BYTES).putInt(count);
+				for (int k = 0; k < count; k++) frame.putLong(values[offset + done + k]);
+			}
+			done += count;
+			this.putCount += count;
+		}
+	}
+
+	@Override
+	public void putOverflow(BigInteger value) throws InterruptedException {
+		synchronized (this) {
+			if (value == HammingNetworkLongChannel.END_OVERFLOW) {
+				reserve(TAG_BYTES).putInt(0);
+			} else {
+				final byte[] bytes = value.toByteArray();
+				reserve(TAG_BYTES + bytes.length).putInt(-bytes.length).put(bytes);
+			}
+		}
+		this.putCount++;
+	}
+
+	@Override
+	public void putLast(Long value) throws InterruptedException {
+		put(value.longValue());
+	}
+
+	/* the write buffer, with room for a frame of bytes bytes; the caller holds the monitor */
+	private ByteBuffer reserve(final int bytes) throws InterruptedException {
+		if (this.outputShutdown) throw new IllegalStateException(this.name + " has been shut down");
+		if (this.writer == null) {
+			this.writer = Thread.ofPlatform().daemon().name(this.name + "-writer").start(this::write);
+		}
+		if (this.out.remaining() < bytes) {
+			final long start = System.nanoTime();
+			while (this.out.position() > 0 && this.out.remaining() < bytes && this.writeFailure == null) wait();
+			this.putBlockedNanos += System.nanoTime() - start;
+			// a frame larger than the buffer gets a buffer of its own
+			if (this.out.capacity() < bytes) this.out = ByteBuffer.allocateDirect(bytes);
+		}
+		if (this.writeFailure != null) throw new UncheckedIOException(this.writeFailure);
+		// the writer waits for a buffer with anything in it
+		if (this.out.position() == 0) notifyAll();
+		return this.out;
+	}
+
+	/* the writer thread: write the buffer whenever it holds anything, until the output is shut down */
+	private void write() {
+		ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		try {
+			while (true) {
+				final ByteBuffer frames;
+				synchronized (this) {
+					while (this.out.position() == 0 && !this.outputShutdown) wait();
+					if (this.out.position() == 0) return;
+					frames = this.out;
+					this.out = spare;
+					notifyAll();
+				}
+				frames.flip();
+				while (frames.hasRemaining()) this.socket.write(frames);
+				spare = frames.clear();
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				this.writeFailure = e;
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			return;
+		}
+	}
+
+	@Override
+	public long take() throws InterruptedException {
+		if (this.batchRemaining == 0) nextBatch();
+		fill(Long.BYTES);
+		this.batchRemaining--;
+		this.takeCount++;
+		return this.in.getLong();
+	}
+
+	@Override
+	public int drainTo(long[] buffer, int maxElements) throws InterruptedException {
+		if (this.batchRemaining == 0) nextBatch();
+		// whatever of the batch has been read, but at least one value
+		if (this.in.remaining() < Long.BYTES) fill(Long.BYTES);
+		final int count = Math.min(Math.min(maxElements, this.batchRemaining), this.in.remaining() / Long.BYTES);
+		for (int k = 0; k < count; k++) buffer[k] = this.in.getLong();
+		this.batchRemaining -= count;
+		this.takeCount += count;
+		return count;
+	}
+
+	@Override
+	public BigInteger takeOverflow() throws InterruptedException {
+		if (this.batchRemaining > 0) throw new IllegalStateException(this.name + " is not on its overflow lane");
+		final int tag = tag();
+		if (tag > 0) throw new IllegalStateException(this.name + " is not on its overflow lane");
+		this.takeCount++;
+		if (tag == 0) return HammingNetworkLongChannel.END_OVERFLOW;
+		final byte[] bytes = new byte[-tag];
+		for (int done = 0; done < bytes.length;) {
+			if (!this.in.hasRemaining()) fill(1);
+			final int count = Math.min(this.in.remaining(), bytes.length - done);
+			this.in.get(bytes, done, count);
+			done += count;
+		}
+		return new BigInteger(bytes);
+	}
+
+	@Override
+	public Long takeFirst() throws InterruptedException {
+		return Long.valueOf(take());
+	}
+
+	@Override
+	public void putFirst(Long value) {
+		throw new UnsupportedOperationException("A socket channel is strictly FIFO");
+	}
+
+	@Override
+	public void putFirstOverflow(BigInteger value) {
+		throw new UnsupportedOperationException("A socket channel is strictly FIFO");
+	}
+
+	@Override
+	public Long takeLast() {
+		throw new UnsupportedOperationException("A socket channel is strictly FIFO");
+	}
+
+	private void nextBatch() throws InterruptedException {
+		final int tag = tag();
+		if (tag <= 0) throw new IllegalStateException(this.name + " is on its overflow lane");
+		this.batchRemaining = tag;
+	}
+
+	private int tag() throws InterruptedException {
+		fill(TAG_BYTES);
+		return this.in.getInt();
+	}
+
+	/* read until at least bytes bytes are buffered */
+	private void fill(final int bytes) throws InterruptedException {
+		if (this.in.remaining() >= bytes) return;
+		final long start = System.nanoTime();
+		try {
+			this.in.compact();
+			while (this.in.position() < bytes) {
+				if (this.socket.read(this.in) < 0) throw new EOFException(this.name + " was closed mid-stream");
+			}
+		} catch (ClosedByInterruptException e) {
+			throw new InterruptedException(this.name + " was interrupted");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			this.in.flip();
+			this.takeBlockedNanos += System.nanoTime() - start;
+		}
+	}
+
+	/* write everything put so far, then tell the other end that nothing more will be */
+	void shutdownOutput() throws IOException, InterruptedException {
+		final Thread writer;
+		synchronized (this) {
+			if (this.outputShutdown) return;
+			this.outputShutdown = true;
+			notifyAll();
+			writer = this.writer;
+		}
+		if (writer != null) writer.join();
+		if (this.writeFailure != null) throw this.writeFailure;
+		if (this.socket.isOpen()) this.socket.shutdownOutput();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			shutdownOutput();
+			final ByteBuffer discard = ByteBuffer.allocate(BUFFER_BYTES);
+			while (this.socket.isOpen() && this.socket.read(discard.clear()) >= 0);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.socket.close();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public int getCapacity() {
+		return 0;
+	}
+
+	@Override
+	public long getDepth() {
+		return 0;
+	}
+
+	@Override
+	public long getPutCount() {
+		return this.putCount;
+	}
+
+	@Override
+	public long getTakeCount() {
+		return this.takeCount;
+	}
+
+	@Override
+	public long getPutBlockedNanos() {
+		return this.putBlockedNanos;
+	}
+
+	@Override
+	public long getTakeBlockedNanos() {
+		return this.takeBlockedNanos;
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
@@ -0,0 +1,44 @@
+package alouw.csc552.hamming;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Where the wall time of one network run went, measured from the start of the run:
+ *
+ *   time to first value: until the print node wrote its first number (-1 if it wrote none)
+ *   generation:          until the print node wrote its last number and closed its sink
+ *   teardown:            from there until every node had finished and released its threads
+ *
+ * Thread safety policy: instances are immutable.
+ */
+public class HammingNetworkTimings {
+
+	private final long firstValueNanos;
+	private final long generationNanos;
+	private final long teardownNanos;
+
+	HammingNetworkTimings(final long firstValueNanos, final long generationNanos, final long teardownNanos) {
+		this.firstValueNanos = firstValueNanos;
+		this.generationNanos = generationNanos;
+		this.teardownNanos = teardownNanos;
+	}
+
+	public long getTimeToFirstValue(final TimeUnit unit) {
+		return this.firstValueNanos < 0 ? -1 : unit.convert(this.firstValueNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getGenerationTime(final TimeUnit unit) {
+		return unit.convert(this.generationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getTeardownTime(final TimeUnit unit) {
+		return unit.convert(this.teardownNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		final String firstValue = this.firstValueNanos < 0 ? "none" : this.firstValueNanos / 1e6 + " ms";
+		return "first value " + firstValue + ", generation " + this.generationNanos / 1e6 + " ms, teardown "
+				+ this.teardownNanos / 1e6 + " ms";
+	}
+}
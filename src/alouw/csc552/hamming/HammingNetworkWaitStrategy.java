@@ -0,0 +1,94 @@
+package alouw.csc552.hamming;
+
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * How a channel waits when it cannot make progress: a consumer on an empty channel, or a producer on
+ * a full one. The choice trades CPU for latency. A spinning side sees a value within nanoseconds of its
+ * put but burns its core while it waits, which pays off on dedicated cores; a blocking side gives the
+ * core up and pays a wake-up (a futex call on Linux) per handoff, which is the right call on a shared
+ * host.
+ *
+ *   SPIN:       busy-spin with Thread.onSpinWait until the channel is ready
+ *   SPIN_YIELD: spin briefly, then Thread.yield until the channel is ready
+ *   SPIN_PARK:  spin briefly, yield briefly, then park: a blocking deque parks until the other side
+ *               signals it; a ring has no signal, so it parks for PARK_NANOS at a time and looks again
+ *   BLOCK:      park at once until the other side signals; a ring edge gets a blocking deque, since a
+ *               ring cannot signal
+ *   AUTOMATIC:  each channel's own default, SPIN_PARK on a ring and BLOCK on a blocking deque
+ *
+ * A spinning side checks for interrupts as it spins, so a network on SPIN or SPIN_YIELD can still be
+ * shut down.
+ *
+ * A strategy is chosen per network or per edge with HammingNetworkCapacities, or per channel with
+ * HammingNetworkChannelFactory.
+ */
+public enum HammingNetworkWaitStrategy {
+
+	SPIN {
+		int idle(final int tries) throws InterruptedException {
+			Thread.onSpinWait();
+			if (Thread.interrupted()) throw new InterruptedException();
+			return Math.min(tries + 1, YIELD_TRIES);
+		}
+
+		boolean blocks(final int tries) {
+			return false;
+		}
+	},
+
+	SPIN_YIELD {
+		int idle(final int tries) throws InterruptedException {
+			if (tries < SPIN_TRIES) Thread.onSpinWait();
+			else Thread.yield();
+			if (Thread.interrupted()) throw new InterruptedException();
+			return Math.min(tries + 1, YIELD_TRIES);
+		}
+
+		boolean blocks(final int tries) {
+			return false;
+		}
+	},
+
+	SPIN_PARK,
+
+	BLOCK {
+		boolean blocks(final int tries) {
+			return true;
+		}
+	},
+
+	AUTOMATIC;
+
+	static final int SPIN_TRIES = 128;
+	static final int YIELD_TRIES = 256;
+	static final long PARK_NANOS = 20_000L;
+
+	/* wait once for a channel that could not make progress after tries waits; returns the new count */
+	int idle(final int tries) throws InterruptedException {
+		if (tries < SPIN_TRIES) {
+			Thread.onSpinWait();
+		} else if (tries < YIELD_TRIES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+			if (Thread.interrupted()) throw new InterruptedException();
+			return tries;
+		}
+		return tries + 1;
+	}
+
+	/* true if, after tries waits, a side that can be signalled should stop looking and block */
+	boolean blocks(final int tries) {
+		return tries >= YIELD_TRIES;
+	}
+
+	/* the strategy a channel uses: AUTOMATIC resolves to the channel's own default */
+	HammingNetworkWaitStrategy forRing() {
+		return this == AUTOMATIC ? SPIN_PARK : this;
+	}
+
+	HammingNetworkWaitStrategy forDeque() {
+		return this == AUTOMATIC ? BLOCK : this;
+	}
+}
@@ -1,104 +1,248 @@
-package alouw.csc552.hamming;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
-/*
- * A factory for producing a worker node. Worker nodes apply the function argument to all values read from an 
- * input channel and write the result to an output channel.
- */
-public class HammingNetworkWorkerNodeFactory {
-
-	public HammingNetworkNode getInstance(
-			final Procedure function, String name, 
-			final long duration, final TimeUnit uom) {
-		return new MultiplicationNodeImpl(function, name, duration, uom);
-	}
-}
-
-class MultiplicationNodeImpl implements HammingNetworkNode {
-
-	private final int NUM_INPUT_CHANNELS = 1;
-	private final int NUM_OUTPUT_CHANNELS = 1;
-	
-	private final long runtime_max_duration;
-	private final TimeUnit runtime_uom;
-	
-	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
-	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
-
-	private final ExecutorService workerPool = Executors.newSingleThreadExecutor(
-			new ThreadFactoryWithNamePrefix("MultiplicationNodeImpl_" + this.name + "_Worker"));
-
-	private final Procedure function;
-	private final String name;
-	
-	MultiplicationNodeImpl(final Procedure function, String name,
-			final long duration, final TimeUnit uom) {
-		this.function = function;
-		this.name = name;
-		this.runtime_max_duration =  duration;
-		this.runtime_uom = uom;
-	}
-	
-	@Override
-	public void start() {
-		
-		inputChannels.stream().forEach(i -> {
-			workerPool.execute(new Runnable() {
-				public void run() {
-					for (;;) {
-						try {
-							final Integer value = function.apply(i.takeFirst());
-							outputChannels.stream().forEach(o -> {
-								try {
-									o.putLast(value);
-								} catch (InterruptedException e) {
-									Thread.currentThread().interrupt();
-									return;
-								}
-							});
-						} catch (InterruptedException e1) {
-							Thread.currentThread().interrupt();
-							return;
-						}
-					}
-				}
-			});
-		});
-		
-		try {
-			workerPool.awaitTermination(this.runtime_max_duration, this.runtime_uom);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			e.printStackTrace();
-		}
-	}
-
-	@Override
-	public void shutdown() throws InterruptedException {
-		this.workerPool.shutdownNow();
-		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
-				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
-	}
-
-	@Override
-	public synchronized void addInputChannel(HammingNetworkChannel input) {
-		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
-		inputChannels.add(input);
-	}
-
-	@Override
-	public synchronized void addOutputChannel(HammingNetworkChannel output) {
-		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of four output channels");
-		outputChannels.add(output);
-	}
-	
-	@Override
-	public void run() {
-		start();
-	}
-}
\ No newline at end of file
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/*
+ * A factory for producing a worker node. Worker nodes apply the function argument to all values read from an 
+ * input channel and write the result to an output channel.
+ */
+public class HammingNetworkWorkerNodeFactory {
+
+	public HammingNetworkNode getInstance(final Procedure function, String name) {
+		return getInstance(function, name, HammingNetwork.DEFAULT_BATCH_SIZE, HammingNetworkExecutionMode.PLATFORM_THREADS);
+	}
+
+	public HammingNetworkNode getInstance(final Procedure function, String name, final int batchSize,
+			final HammingNetworkExecutionMode mode) {
+		return new MultiplicationNodeImpl(function, name, batchSize, mode);
+	}
+
+	/* a multiply node for a pull network: it applies the function to one input value per request */
+	public HammingNetworkNode getPullInstance(final Procedure function, String name) {
+		return new PullMultiplicationNodeImpl(function, name);
+	}
+}
+
+class MultiplicationNodeImpl implements HammingNetworkNode {
+
+	private final int NUM_INPUT_CHANNELS = 1;
+	private final int NUM_OUTPUT_CHANNELS = 1;
+	
+	private final List<HammingNetworkChannel> inputChannels = new ArrayList<>(NUM_INPUT_CHANNELS);
+	private final List<HammingNetworkChannel> outputChannels = new ArrayList<>(NUM_OUTPUT_CHANNELS);
+
+	private final ExecutorService workerPool;
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+	private final Procedure function;
+	private final String name;
+	private final int batchSize;
+	
+	MultiplicationNodeImpl(final Procedure function, String name, final int batchSize,
+			final HammingNetworkExecutionMode mode) {
+		this.function = function;
+		this.name = name;
+		this.batchSize = batchSize;
+		this.workerPool = mode.newWorkerPool("MultiplicationNodeImpl_" + this.name + "_Worker", 1);
+	}
+	
+	@Override
+	public void start() {
+		
+		inputChannels.stream().forEach(i -> {
+			workerPool.execute(new Runnable() {
+				public void run() {
+					final HammingNetworkChannel o = outputChannels.get(0);
+					final long[] inputBatch = new long[batchSize];
+					final long[] outputBatch = new long[batchSize];
+					boolean inputOverflowed = false;
+					boolean outputOverflowed = false;
+					
+					try {
+						for (;;) {
+							if (inputOverflowed) {
+								final BigInteger value = i.takeOverflow();
+								if (value == HammingNetworkLongChannel.END_OVERFLOW) {
+									o.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+									break;
+								}
+								o.putOverflow(function.apply(value));
+								continue;
+							}
+							
+							final int count = i.drainTo(inputBatch, batchSize);
+							int outputCount = 0;
+							boolean ended = false;
+							for (int k = 0; k < count; k++) {
+								final long value = inputBatch[k];
+								if (value == HammingNetworkLongChannel.OVERFLOW) {
+									inputOverflowed = true;
+									break;
+								}
+								if (value == HammingNetworkLongChannel.END) {
+									ended = true;
+									break;
+								}
+								if (!outputOverflowed) {
+									try {
+										final long product = function.apply(value);
+										outputBatch[outputCount++] = product;
+										continue;
+									} catch (ArithmeticException e) {
+										// the product no longer fits: switch to the overflow lane
+										o.putAll(outputBatch, 0, outputCount);
+										outputCount = 0;
+										o.put(HammingNetworkLongChannel.OVERFLOW);
+										outputOverflowed = true;
+									}
+								}
+								o.putOverflow(function.apply(BigInteger.valueOf(value)));
+							}
+							o.putAll(outputBatch, 0, outputCount);
+							
+							if (ended) {
+								// pass the pill on, on the lane the output is on
+								if (outputOverflowed) o.putOverflow(HammingNetworkLongChannel.END_OVERFLOW);
+								else o.put(HammingNetworkLongChannel.END);
+								break;
+							}
+							
+							if (inputOverflowed && !outputOverflowed) {
+								o.put(HammingNetworkLongChannel.OVERFLOW);
+								outputOverflowed = true;
+							}
+						}
+						completion.complete(null);
+					} catch (InterruptedException e1) {
+						completion.completeExceptionally(e1);
+						Thread.currentThread().interrupt();
+					} catch (RuntimeException e) {
+						completion.completeExceptionally(e);
+						throw e;
+					}
+				}
+			});
+		});
+	}
+
+	@Override
+	public void shutdown() throws InterruptedException {
+		this.workerPool.shutdownNow();
+		this.workerPool.awaitTermination(HammingNetworkControlNodeFactory.TEARDOWN_TIME_MAX_DURATION,
+				HammingNetworkControlNodeFactory.TEARDOWN_TIME_UOM);
+	}
+
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return this.completion;
+	}
+
+	@Override
+	public Procedure getFusibleFunction() {
+		return this.function;
+	}
+
+	@Override
+	public synchronized void addInputChannel(HammingNetworkChannel input) {
+		if (this.inputChannels.size() == NUM_INPUT_CHANNELS) throw new IllegalArgumentException("Max of one input channels");
+		inputChannels.add(input);
+	}
+
+	@Override
+	public synchronized void addOutputChannel(HammingNetworkChannel output) {
+		if (this.outputChannels.size() == NUM_OUTPUT_CHANNELS) throw new IllegalArgumentException("Max of four output channels");
+		outputChannels.add(output);
+	}
+	
+	@Override
+	public void run() {
+		start();
+	}
+}
+
+/*
+ * Multiplies on demand: each pull takes one value from the input and returns its product. A product
+ * that overflows is held for the first pullOverflow, after OVERFLOW has been returned.
+ */
+class PullMultiplicationNodeImpl implements HammingNetworkNode, HammingNetworkPullSource {
+
+	private final Procedure function;
+	private final String name;
+
+	private HammingNetworkChannel input;
+	private boolean inputOverflowed;
+	private BigInteger held;
+
+	PullMultiplicationNodeImpl(final Procedure function, String name) {
+		this.function = function;
+		this.name = name;
+	}
+
+	@Override
+	public long pull(HammingNetworkChannel output) throws InterruptedException {
+		final long value = this.input.take();
+		if (value == HammingNetworkLongChannel.OVERFLOW) {
+			this.inputOverflowed = true;
+			return HammingNetworkLongChannel.OVERFLOW;
+		}
+		try {
+			return this.function.apply(value);
+		} catch (ArithmeticException e) {
+			this.held = this.function.apply(BigInteger.valueOf(value));
+			return HammingNetworkLongChannel.OVERFLOW;
+		}
+	}
+
+	@Override
+	public BigInteger pullOverflow(HammingNetworkChannel output) throws InterruptedException {
+		if (this.held != null) {
+			final BigInteger value = this.held;
+			this.held = null;
+			return value;
+		}
+		if (!this.inputOverflowed) {
+			final long value = this.input.take();
+			if (value != HammingNetworkLongChannel.OVERFLOW) return this.function.apply(BigInteger.valueOf(value));
+			this.inputOverflowed = true;
+		}
+		return this.function.apply(this.input.takeOverflow());
+	}
+
+	/* the work happens on the puller's thread */
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	/* done as soon as it is started: it has no loop of its own */
+	@Override
+	public CompletableFuture<Void> getCompletion() {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public void addInputChannel(HammingNetworkChannel input) {
+		if (this.input != null) throw new IllegalArgumentException("Max of one input channels");
+		this.input = input;
+	}
+
+	@Override
+	public void addOutputChannel(HammingNetworkChannel output) {
+	}
+
+	@Override
+	public void run() {
+		start();
+	}
+
+	public String toString() {
+		return this.name;
+	}
+}
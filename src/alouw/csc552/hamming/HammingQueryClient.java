@@ -0,0 +1,93 @@
+package alouw.csc552.hamming;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * A blocking client for HammingQueryServer: one request at a time over one connection. A query the
+ * server rejects throws an IllegalArgumentException with the server's message.
+ *
+ * A client is used by one thread at a time.
+ */
+public class HammingQueryClient implements Closeable {
+
+	private final SocketChannel channel;
+	private final ByteBuffer request = ByteBuffer.allocate(HammingQueryServer.REQUEST_BYTES);
+	private final ByteBuffer header = ByteBuffer.allocate(HammingQueryServer.RESPONSE_HEADER_BYTES);
+	private ByteBuffer body = ByteBuffer.allocate(64 * Long.BYTES);
+
+	public HammingQueryClient(final SocketAddress address) throws IOException {
+		this.channel = address instanceof UnixDomainSocketAddress
+				? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+		try {
+			this.channel.connect(address);
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		}
+	}
+
+	/* the nth number, counting 1 as the first */
+	public long nth(final long n) throws IOException {
+		return query(HammingQueryServer.NTH, n, 0)[0];
+	}
+
+	/* the number of numbers at most x */
+	public long countUpTo(final long x) throws IOException {
+		return query(HammingQueryServer.COUNT, x, 0)[0];
+	}
+
+	/* the first n numbers */
+	public long[] prefix(final long n) throws IOException {
+		return query(HammingQueryServer.PREFIX, n, 0);
+	}
+
+	/* the numbers from a to b inclusive */
+	public long[] range(final long a, final long b) throws IOException {
+		return query(HammingQueryServer.RANGE, a, b);
+	}
+
+	/* send one request and wait for its response */
+	public long[] query(final byte op, final long a, final long b) throws IOException {
+		this.request.clear();
+		this.request.put(op).putLong(a).putLong(b).flip();
+		while (this.request.hasRemaining()) this.channel.write(this.request);
+
+		this.header.clear();
+		readFully(this.header);
+		this.header.flip();
+		final byte status = this.header.get();
+		final int length = this.header.getInt();
+
+		final int bytes = status == HammingQueryServer.OK ? length * Long.BYTES : length;
+		if (this.body.capacity() < bytes) this.body = ByteBuffer.allocate(bytes);
+		this.body.clear().limit(bytes);
+		readFully(this.body);
+		this.body.flip();
+
+		if (status != HammingQueryServer.OK) {
+			throw new IllegalArgumentException(StandardCharsets.UTF_8.decode(this.body).toString());
+		}
+		final long[] numbers = new long[length];
+		this.body.asLongBuffer().get(numbers);
+		return numbers;
+	}
+
+	private void readFully(final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (this.channel.read(buffer) < 0) throw new EOFException("The server closed the connection");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
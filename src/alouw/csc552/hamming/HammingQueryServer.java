@@ -0,0 +1,333 @@
+package alouw.csc552.hamming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import ajeffrey.teaching.debug.Debug;
+
+/*
+ * A long-running server that answers queries on a sequence of smooth numbers from a warm in-memory
+ * cache, so that a request costs a lookup rather than a JVM and a generator.
+ *
+ * The cache holds the first cacheNumbers numbers of the sequence (at most the ones that fit in a long),
+ * built once on the common ForkJoinPool (see HammingSequence). A query past the cache is answered from
+ * the exponent lattice (see HammingLattice) without generating the numbers in front of it. The lattice
+ * walks its rows on the one thread that serves every connection, so a query that would walk more than
+ * MAX_QUERY_ROWS of them is refused, and so is a rank past the numbers that fit in a long, before any
+ * walk.
+ *
+ * The protocol is binary and big-endian, and a client may pipeline any number of requests. A request
+ * is REQUEST_BYTES long: an opcode byte and two longs a and b.
+ *
+ *   NTH:    the ath number, counting 1 as the first (b is ignored)
+ *   COUNT:  the number of numbers at most a (b is ignored)
+ *   PREFIX: the first a numbers (b is ignored)
+ *   RANGE:  the numbers from a to b inclusive
+ *
+ * A response is a status byte and an int length. OK is followed by length longs, the numbers in
+ * ascending order (or the one count); ERROR by a message of length UTF-8 bytes. A response holds at
+ * most MAX_RESPONSE_NUMBERS numbers, and only numbers that fit in a long. A query that fails for any
+ * reason is answered with ERROR, and the connection and the server carry on.
+ *
+ * The server listens on a loopback TCP port or on a Unix-domain socket, and serves every connection
+ * from one thread with a non-blocking Selector. A connection whose responses are not being read stops
+ * being read until they have been written. It also stops answering its pipelined requests once
+ * RESPONSE_BUFFER_BYTES of responses wait to be written, and answers the rest as they drain, so a
+ * connection buffers at most that plus one response.
+ */
+public class HammingQueryServer implements Closeable {
+
+	public static final byte NTH = 1;
+	public static final byte COUNT = 2;
+	public static final byte PREFIX = 3;
+	public static final byte RANGE = 4;
+
+	public static final byte OK = 0;
+	public static final byte ERROR = 1;
+
+	public static final int REQUEST_BYTES = 1 + 2 * Long.BYTES;
+	public static final int RESPONSE_HEADER_BYTES = 1 + Integer.BYTES;
+	public static final int MAX_RESPONSE_NUMBERS = 1 << 20;
+	public static final int DEFAULT_PORT = 5520;
+	public static final long DEFAULT_CACHE_NUMBERS = 1L << 24;
+
+	/* the number of pipelined requests a connection reads at once */
+	private static final int READ_REQUESTS = 256;
+	/* a connection answers no more requests while this many bytes of responses are waiting */
+	private static final int RESPONSE_BUFFER_BYTES = 1 << 20;
+	/* the rows of the lattice one query may walk, about a third of a second's work */
+	private static final double MAX_QUERY_ROWS = 1 << 24;
+	/* the walks an nth query takes: a few to locate the number's logarithm, two to bracket it, one to collect */
+	private static final int NTH_WALKS = 6;
+
+	private final HammingLattice lattice;
+	private final long maxRank;
+	private final long[] cache;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+
+	/* listen on address, a loopback InetSocketAddress or a UnixDomainSocketAddress */
+	public HammingQueryServer(final SocketAddress address, final long cacheNumbers, final List<Long> primes)
+			throws IOException {
+		this.lattice = new HammingLattice(primes);
+		this.maxRank = this.lattice.countUpTo(HammingNetworkLongChannel.OVERFLOW - 1);
+		final HammingSequence sequence = new HammingSequence(cacheNumbers, primes);
+		if (sequence.size() > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Cannot cache " + cacheNumbers + " numbers");
+		this.cache = sequence.stream().parallel().toArray();
+
+		this.server = address instanceof UnixDomainSocketAddress
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+		try {
+			this.server.bind(address);
+			this.server.configureBlocking(false);
+			this.selector = Selector.open();
+			this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			this.server.close();
+			throw e;
+		}
+	}
+
+	/* the address the server listens on, with the port it was given if it asked for any */
+	public SocketAddress getAddress() throws IOException {
+		return this.server.getLocalAddress();
+	}
+
+	/* the number of numbers in the cache */
+	public int getCacheNumbers() {
+		return this.cache.length;
+	}
+
+	/* serve connections until the server is closed */
+	public void serve() throws IOException {
+		try {
+			while (this.server.isOpen()) {
+				this.selector.select();
+				final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) continue;
+						if (key.isAcceptable()) accept();
+						else if (key.isWritable()) write(key);
+						else if (key.isReadable()) read(key);
+					} catch (IOException | RuntimeException e) {
+						// one broken connection must not stop the others
+						if (Main.DEBUG) Debug.out.println("HammingQueryServer dropped " + key.channel() + ": " + e);
+						key.cancel();
+						key.channel().close();
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			return;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			for (SelectionKey key : this.selector.keys()) key.channel().close();
+			this.selector.close();
+		} finally {
+			this.server.close();
+		}
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel client = this.server.accept();
+		if (client == null) return;
+		client.configureBlocking(false);
+		client.register(this.selector, SelectionKey.OP_READ, new Connection());
+	}
+
+	private void read(final SelectionKey key) throws IOException {
+		final Connection connection = (Connection) key.attachment();
+		final SocketChannel client = (SocketChannel) key.channel();
+		if (client.read(connection.requests) < 0) {
+			key.cancel();
+			client.close();
+			return;
+		}
+		reply(key, connection);
+	}
+
+	private void write(final SelectionKey key) throws IOException {
+		final Connection connection = (Connection) key.attachment();
+		flush(key, connection);
+		// requests read, or left unanswered, while the responses were backed up
+		if (connection.responses.position() == 0) reply(key, connection);
+	}
+
+	/* answer and write until every complete request is answered or the responses back up */
+	private void reply(final SelectionKey key, final Connection connection) throws IOException {
+		do {
+			answer(connection);
+			flush(key, connection);
+		} while (connection.responses.position() == 0 && connection.requests.position() >= REQUEST_BYTES);
+	}
+
+	/* answer the complete requests in the buffer until RESPONSE_BUFFER_BYTES of responses wait */
+	private void answer(final Connection connection) {
+		connection.requests.flip();
+		while (connection.requests.remaining() >= REQUEST_BYTES && connection.responses.position() < RESPONSE_BUFFER_BYTES) {
+			final byte op = connection.requests.get();
+			final long a = connection.requests.getLong();
+			final long b = connection.requests.getLong();
+			connection.respond(op, a, b);
+		}
+		connection.requests.compact();
+	}
+
+	/* write what the channel takes, then wait for it to take the rest before reading more requests */
+	private void flush(final SelectionKey key, final Connection connection) throws IOException {
+		connection.responses.flip();
+		((SocketChannel) key.channel()).write(connection.responses);
+		final boolean backedUp = connection.responses.hasRemaining();
+		connection.responses.compact();
+		key.interestOps(backedUp ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/* the numbers to answer a query with, in ascending order */
+	long[] query(final byte op, final long a, final long b) {
+		switch (op) {
+		case NTH:
+			return new long[] {nth(a)};
+		case COUNT:
+			return new long[] {countUpTo(a)};
+		case PREFIX:
+			if (a < 0 || a > MAX_RESPONSE_NUMBERS) throw new IllegalArgumentException("Prefix length out of range: " + a);
+			if (a <= this.cache.length) return Arrays.copyOf(this.cache, (int) a);
+			return range(1, nth(a));
+		case RANGE:
+			return range(a, b);
+		default:
+			throw new IllegalArgumentException("Unknown opcode " + op);
+		}
+	}
+
+	private long nth(final long n) {
+		if (n < 1) throw new IllegalArgumentException("Ranks start at 1: " + n);
+		if (n <= this.cache.length) return this.cache[(int) (n - 1)];
+		if (n > this.maxRank) throw new IllegalArgumentException("Number " + n + " does not fit in a long");
+		checkWalks(this.lattice.estimate(n), NTH_WALKS);
+		return this.lattice.nth(n).longValue();
+	}
+
+	private long countUpTo(final long x) {
+		if (this.cache.length > 0 && x <= this.cache[this.cache.length - 1]) return upTo(x);
+		checkWalks(Math.log(Math.max(x, 1)), 1);
+		return this.lattice.countUpTo(x);
+	}
+
+	private long[] range(final long a, final long b) {
+		final long first = Math.max(a, 1);
+		if (first > b) return new long[0];
+		final long below = countUpTo(first - 1), upTo = countUpTo(b);
+		final long count = upTo - below;
+		if (count > MAX_RESPONSE_NUMBERS) throw new IllegalArgumentException("Range holds " + count + " numbers");
+		if (upTo <= this.cache.length) return Arrays.copyOfRange(this.cache, (int) below, (int) upTo);
+
+		// a walk for each end, and two for each band of the range
+		checkWalks(Math.log(b), 2 * (count / HammingLattice.RANGE_NUMBERS + 2));
+		final long[] numbers = new long[(int) count];
+		final int[] found = new int[1];
+		this.lattice.range(first, b, number -> numbers[found[0]++] = number);
+		return numbers;
+	}
+
+	/* refuse a query that would walk the rows below logarithm t more than MAX_QUERY_ROWS in all */
+	private void checkWalks(final double t, final long walks) {
+		final double rows = this.lattice.rows(t) * walks;
+		if (rows > MAX_QUERY_ROWS) {
+			throw new IllegalArgumentException("Query would walk about " + (long) rows + " lattice rows, more than "
+					+ (long) MAX_QUERY_ROWS);
+		}
+	}
+
+	/* the number of cached numbers at most x */
+	private int upTo(final long x) {
+		final int index = Arrays.binarySearch(this.cache, x);
+		return index >= 0 ? index + 1 : -index - 1;
+	}
+
+	/* the pipelined requests of one client, and the responses it has not read yet */
+	private class Connection {
+
+		ByteBuffer requests = ByteBuffer.allocate(READ_REQUESTS * REQUEST_BYTES);
+		ByteBuffer responses = ByteBuffer.allocate(READ_REQUESTS * (RESPONSE_HEADER_BYTES + Long.BYTES));
+
+		void respond(final byte op, final long a, final long b) {
+			try {
+				final long[] numbers = query(op, a, b);
+				reserve(RESPONSE_HEADER_BYTES + numbers.length * Long.BYTES);
+				this.responses.put(OK).putInt(numbers.length);
+				this.responses.asLongBuffer().put(numbers);
+				this.responses.position(this.responses.position() + numbers.length * Long.BYTES);
+			} catch (RuntimeException e) {
+				// whatever failed, the client is told and the connection carries on
+				final String reason = e.getMessage() != null ? e.getMessage() : e.toString();
+				final byte[] message = reason.getBytes(StandardCharsets.UTF_8);
+				reserve(RESPONSE_HEADER_BYTES + message.length);
+				this.responses.put(ERROR).putInt(message.length).put(message);
+			}
+		}
+
+		private void reserve(final int bytes) {
+			if (this.responses.remaining() >= bytes) return;
+			final ByteBuffer grown = ByteBuffer.allocate((int) Math.max(
+					Math.min(2L * this.responses.capacity(), Integer.MAX_VALUE - 8), (long) this.responses.position() + bytes));
+			this.responses.flip();
+			grown.put(this.responses);
+			this.responses = grown;
+		}
+	}
+
+	/*
+	 * java HammingQueryServer [port | socket path] [cache numbers] [primes]
+	 *
+	 * A port is bound on the loopback address; anything else is taken as the path of a Unix-domain
+	 * socket. The primes are comma-separated and default to 2,3,5.
+	 */
+	public static void main(final String[] args) throws IOException {
+		final String where = args.length > 0 ? args[0] : String.valueOf(DEFAULT_PORT);
+		final long cacheNumbers = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_CACHE_NUMBERS;
+		final List<Long> primes = args.length > 2 ? HammingGeneratorFactory.parsePrimes(args[2]) : HammingNetwork.DEFAULT_PRIMES;
+
+		final SocketAddress address;
+		if (where.chars().allMatch(Character::isDigit)) {
+			address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(where));
+		} else {
+			final Path path = Paths.get(where);
+			Files.deleteIfExists(path);
+			address = UnixDomainSocketAddress.of(path);
+		}
+
+		final long startTime = System.currentTimeMillis();
+		try (HammingQueryServer server = new HammingQueryServer(address, cacheNumbers, primes)) {
+			System.out.println("Cached " + server.getCacheNumbers() + " numbers in "
+					+ (System.currentTimeMillis() - startTime) / 1000.0 + " Seconds");
+			System.out.println("Listening on " + server.getAddress());
+			server.serve();
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/*
+ * A lazy view of the first threshold numbers of a sequence of smooth numbers, for callers that want
+ * to compose it with the stream APIs rather than have a generator write it to a sink.
+ *
+ * The view is backed by the exponent lattice (see HammingLattice), the same band enumeration as
+ * ParallelHammingGenerator: numbers are built one band of logarithms at a time as they are pulled, so
+ * a short-circuiting operation (limit, takeWhile, anyMatch, findFirst) stops generation after the band
+ * it is in. A generator that pushes into a sink cannot be stopped like that without a producer thread
+ * and a handoff per number.
+ *
+ * The spliterator is SIZED and SUBSIZED: it covers a range of ranks, and halving the ranks halves the
+ * values, since the sequence is sorted. Splitting costs nothing; each half looks up the number at its
+ * first rank (HammingLattice.nth) when it starts, so .parallel() builds disjoint value ranges on every
+ * worker. A view splits into about LEAVES_PER_WORKER pieces per worker of the common pool, the way the
+ * stream framework sizes its own leaves, and no piece is smaller than MIN_SPLIT_NUMBERS: a view of
+ * {2, 3, 5} holds at most 12691 numbers, so a fixed split size in the thousands would never split it.
+ *
+ * Only the numbers that fit in a long are in the view, since it streams primitive longs: a threshold
+ * past them is cut down to them, and size() says how many the view holds.
+ *
+ * Thread safety policy: instances are immutable; each stream, iterator and spliterator is used by one
+ * thread at a time, as usual.
+ */
+public class HammingSequence {
+
+	/* no spliterator is split into pieces of fewer numbers than this */
+	static final long MIN_SPLIT_NUMBERS = 256;
+	static final int LEAVES_PER_WORKER = 4;
+
+	private final HammingLattice lattice;
+	private final long maxNumbers;
+
+	/* a view of the first threshold numbers of {2, 3, 5}, or of all that fit in a long if there are fewer */
+	public HammingSequence(final long threshold) {
+		this(threshold, HammingNetwork.DEFAULT_PRIMES);
+	}
+
+	/* a view of the first threshold numbers of primes, or of all that fit in a long if there are fewer */
+	public HammingSequence(final long threshold, final List<Long> primes) {
+		this.lattice = new HammingLattice(primes);
+		this.maxNumbers = Math.max(0, Math.min(threshold, this.lattice.countUpTo(HammingNetworkLongChannel.OVERFLOW - 1)));
+	}
+
+	/* the number of numbers in the view: the threshold, or less where the numbers outgrow a long */
+	public long size() {
+		return this.maxNumbers;
+	}
+
+	/* the numbers in ascending order; call .parallel() to build them on the common ForkJoinPool */
+	public LongStream stream() {
+		return StreamSupport.longStream(spliterator(), false);
+	}
+
+	public PrimitiveIterator.OfLong iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	public Spliterator.OfLong spliterator() {
+		return new RankSpliterator(this.lattice, 1, this.maxNumbers + 1, splitNumbers(this.maxNumbers));
+	}
+
+	/* the size below which a spliterator over size numbers is not split */
+	static long splitNumbers(final long size) {
+		final long leaves = (long) LEAVES_PER_WORKER * ForkJoinPool.getCommonPoolParallelism();
+		return Math.max(MIN_SPLIT_NUMBERS, size / leaves);
+	}
+
+	/*
+	 * The numbers ranked from to end - 1, split down to splitNumbers. The current band is buffered in
+	 * numbers; lo is the clear bound the next band starts at, once the first number is known.
+	 */
+	private static class RankSpliterator implements Spliterator.OfLong {
+
+		private static final long[] EMPTY = new long[0];
+
+		private final HammingLattice lattice;
+		private final long splitNumbers;
+		private long from;
+		private long end;
+
+		private BigInteger first;
+		private double lo;
+		private long[] numbers = EMPTY;
+		private int position;
+
+		RankSpliterator(final HammingLattice lattice, final long from, final long end, final long splitNumbers) {
+			this.lattice = lattice;
+			this.splitNumbers = splitNumbers;
+			this.from = from;
+			this.end = end;
+		}
+
+		@Override
+		public boolean tryAdvance(final LongConsumer action) {
+			if (this.from >= this.end) return false;
+			if (this.position == this.numbers.length) fill();
+			this.from++;
+			action.accept(this.numbers[this.position++]);
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(final LongConsumer action) {
+			while (this.from < this.end) {
+				if (this.position == this.numbers.length) fill();
+				final int count = (int) Math.min(this.numbers.length - this.position, this.end - this.from);
+				for (int k = 0; k < count; k++) action.accept(this.numbers[this.position + k]);
+				this.position += count;
+				this.from += count;
+			}
+		}
+
+		/* buffer the next band that holds a number of the range */
+		private void fill() {
+			if (this.first == null) {
+				this.first = this.lattice.nth(this.from);
+				this.lo = this.lattice.below(this.first);
+			}
+			do {
+				final double hi = this.lattice.next(this.lo);
+				final List<BigInteger> band = this.lattice.between(this.lo, hi);
+				this.lo = hi;
+
+				final long[] numbers = new long[band.size()];
+				int count = 0;
+				for (BigInteger number : band) {
+					if (number.compareTo(this.first) >= 0) numbers[count++] = number.longValue();
+				}
+				this.numbers = count == numbers.length ? numbers : Arrays.copyOf(numbers, count);
+			} while (this.numbers.length == 0);
+			this.position = 0;
+		}
+
+		/* hand the lower half of the remaining ranks to a new spliterator, before this one has started */
+		@Override
+		public Spliterator.OfLong trySplit() {
+			final long remaining = this.end - this.from;
+			if (this.first != null || remaining < 2 * this.splitNumbers) return null;
+			final long middle = this.from + remaining / 2;
+			final RankSpliterator prefix = new RankSpliterator(this.lattice, this.from, middle, this.splitNumbers);
+			this.from = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return this.end - this.from;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+
+		/* the numbers are in their natural order */
+		@Override
+		public Comparator<? super Long> getComparator() {
+			return null;
+		}
+	}
+}
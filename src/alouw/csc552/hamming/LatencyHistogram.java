@@ -0,0 +1,51 @@
+package alouw.csc552.hamming;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * A histogram of latencies in nanoseconds with one bucket per power of two: bucket b counts the
+ * latencies of 2^(b-1) up to 2^b - 1, bucket 0 the zero latencies.
+ *
+ * Thread safety policy: record is called by one thread at a time (each call happening-before the
+ * next), which publishes each bucket with an ordered store; any thread may read.
+ */
+class LatencyHistogram {
+
+	private static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private volatile long max;
+
+	void record(final long nanos) {
+		final int bucket = Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+		this.counts.lazySet(bucket, this.counts.get(bucket) + 1);
+		if (nanos > this.max) this.max = nanos;
+	}
+
+	long[] snapshot() {
+		final long[] snapshot = new long[BUCKETS];
+		for (int b = 0; b < BUCKETS; b++) snapshot[b] = this.counts.get(b);
+		return snapshot;
+	}
+
+	long max() {
+		return this.max;
+	}
+
+	static long count(final long[] snapshot) {
+		long count = 0;
+		for (long c : snapshot) count += c;
+		return count;
+	}
+
+	/* the upper bound of the bucket holding the given fraction of the recorded latencies */
+	static long percentile(final long[] snapshot, final double fraction) {
+		final long rank = (long) Math.ceil(fraction * count(snapshot));
+		long seen = 0;
+		for (int b = 0; b < snapshot.length; b++) {
+			seen += snapshot[b];
+			if (seen >= rank && seen > 0) return b == 0 ? 0 : (1L << b) - 1;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,107 @@
+package alouw.csc552.hamming;
+
+import java.util.List;
+
+/*
+ * The metrics of one node, worked out from its channels (and its merge steps) on every read.
+ *
+ * Thread safety policy: the rate since the previous read is the only state, guarded by this.
+ */
+class NodeMetricsImpl implements HammingNetworkNodeMXBean {
+
+	private final String name;
+	private final List<HammingNetworkChannelMXBean> inputs;
+	private final List<HammingNetworkChannelMXBean> outputs;
+	private final LatencyHistogram steps;
+	private final long createdNanos = System.nanoTime();
+
+	private long lastReadNanos = this.createdNanos;
+	private long lastReadValues;
+
+	NodeMetricsImpl(final String name, final List<HammingNetworkChannelMXBean> inputs,
+			final List<HammingNetworkChannelMXBean> outputs, final LatencyHistogram steps) {
+		this.name = name;
+		this.inputs = inputs;
+		this.outputs = outputs;
+		this.steps = steps;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public long getValuesIn() {
+		long values = 0;
+		for (HammingNetworkChannelMXBean input : this.inputs) values += input.getTakeCount();
+		return values;
+	}
+
+	@Override
+	public long getValuesOut() {
+		return this.outputs.isEmpty() ? 0 : this.outputs.get(0).getPutCount();
+	}
+
+	private long values() {
+		return this.outputs.isEmpty() ? getValuesIn() : getValuesOut();
+	}
+
+	@Override
+	public synchronized double getValuesPerSecond() {
+		final long now = System.nanoTime();
+		final long values = values();
+		final double rate = perSecond(values - this.lastReadValues, now - this.lastReadNanos);
+		this.lastReadNanos = now;
+		this.lastReadValues = values;
+		return rate;
+	}
+
+	@Override
+	public double getAverageValuesPerSecond() {
+		return perSecond(values(), System.nanoTime() - this.createdNanos);
+	}
+
+	private static double perSecond(final long values, final long nanos) {
+		return nanos <= 0 ? 0 : values * 1e9 / nanos;
+	}
+
+	@Override
+	public long getInputBlockedNanos() {
+		long nanos = 0;
+		for (HammingNetworkChannelMXBean input : this.inputs) nanos += input.getTakeBlockedNanos();
+		return nanos;
+	}
+
+	@Override
+	public long getOutputBlockedNanos() {
+		long nanos = 0;
+		for (HammingNetworkChannelMXBean output : this.outputs) nanos += output.getPutBlockedNanos();
+		return nanos;
+	}
+
+	@Override
+	public long getMergeStepCount() {
+		return LatencyHistogram.count(getMergeStepHistogram());
+	}
+
+	@Override
+	public long getMergeStepMedianNanos() {
+		return LatencyHistogram.percentile(getMergeStepHistogram(), 0.5);
+	}
+
+	@Override
+	public long getMergeStep99thPercentileNanos() {
+		return LatencyHistogram.percentile(getMergeStepHistogram(), 0.99);
+	}
+
+	@Override
+	public long getMergeStepMaxNanos() {
+		return this.steps == null ? 0 : this.steps.max();
+	}
+
+	@Override
+	public long[] getMergeStepHistogram() {
+		return this.steps == null ? new long[0] : this.steps.snapshot();
+	}
+}
@@ -0,0 +1,161 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+ * A generator that splits the sequence into contiguous segments of values and builds the segments in
+ * parallel on a ForkJoinPool, so that it can use every core rather than the fixed threads of a network.
+ *
+ * A segment is a band of logarithms [lo, hi) of the exponent lattice (see HammingLattice): its numbers
+ * are enumerated by looping over the exponents, independently of every other segment, then sorted.
+ * Each row of the lattice is built by multiplying along it in long arithmetic, so the numbers that fit
+ * in a long are sorted as a primitive array and only the numbers past them are BigIntegers.
+ *
+ * Segment bounds are placed segmentNumbers numbers apart by the lattice's estimate of the logarithm of
+ * each rank, fewer once the digits of a segment's numbers would take more than SEGMENT_BITS, and the
+ * last planned segment reaches a band past the logarithm estimated for the threshold. If it still falls
+ * short, as it does where the estimate runs low, further segments follow as many ranks apart. Each
+ * bound is cleared of nearby points before use, so adjacent segments agree on which side of it every
+ * number is.
+ *
+ * Segments are written to the sink in order by the thread that calls start, while at most two segments
+ * per worker of the pool are in flight, so memory stays bounded whatever the threshold.
+ *
+ * Every segment walks the rows of the outer exponents below its upper bound, O((ln X)^(k-1)) for k
+ * primes, whether or not they hold a number of the segment. With many primes the rows outnumber the
+ * numbers and the segments get sparse, so a segment holds at least as many numbers as the last one
+ * walks rows: the walk then costs at most about as much as building the numbers. That is capped at
+ * MAX_SEGMENT_NUMBERS to bound memory, past which the walk dominates and the sequential engine is
+ * faster; with one prime every row is a whole segment and the walk costs nothing.
+ */
+public class ParallelHammingGenerator implements HammingGenerator {
+
+	static final long SEGMENT_NUMBERS = 1L << 16;
+	static final long MAX_SEGMENT_NUMBERS = 1L << 20;
+	/* the digits of a segment's numbers take at most about as much memory as MAX_SEGMENT_NUMBERS longs */
+	static final double SEGMENT_BITS = MAX_SEGMENT_NUMBERS * Long.SIZE;
+	private static final double LN2 = Math.log(2);
+
+	private final long maxNumbers;
+	private final long segmentNumbers;
+	private final HammingLattice lattice;
+	private final ForkJoinPool pool;
+	private final HammingNetworkSink sink;
+
+	/* start writes the first threshold numbers to sink and closes it, building them on the common pool */
+	public ParallelHammingGenerator(final long threshold, final List<Long> primes, final HammingNetworkSink sink) {
+		this(threshold, primes, ForkJoinPool.commonPool(), sink);
+	}
+
+	public ParallelHammingGenerator(final long threshold, final List<Long> primes, final ForkJoinPool pool,
+			final HammingNetworkSink sink) {
+		HammingGeneratorFactory.checkPrimes(primes);
+		this.lattice = new HammingLattice(primes);
+		this.maxNumbers = threshold;
+		this.segmentNumbers = segmentNumbers(this.lattice, threshold);
+		this.pool = pool;
+		this.sink = sink;
+	}
+
+	/*
+	 * the numbers per segment: SEGMENT_NUMBERS, or as many as the rows a walk up to the threshold visits,
+	 * at most MAX_SEGMENT_NUMBERS
+	 */
+	static long segmentNumbers(final HammingLattice lattice, final long threshold) {
+		final double rows = lattice.rows(lattice.estimate(Math.max(1, threshold)));
+		return (long) Math.min(MAX_SEGMENT_NUMBERS, Math.max(SEGMENT_NUMBERS, rows));
+	}
+
+	@Override
+	public void start() {
+		final int inFlight = 2 * Math.max(1, this.pool.getParallelism());
+		final Deque<ForkJoinTask<Segment>> window = new ArrayDeque<>();
+
+		try (HammingNetworkSink sink = this.sink) {
+			// the segments submitted so far end at the logarithm estimated for rank planned, before it is cleared
+			long planned = 0, written = 0;
+			double end = -1;
+			while (written < this.maxNumbers) {
+				while (window.size() < inFlight && (planned < this.maxNumbers || window.isEmpty())) {
+					final double lo = end;
+					final long from = planned;
+					if (planned < this.maxNumbers) {
+						// the last planned segment reaches a band past the threshold
+						planned = Math.min(planned + numbersFrom(planned), this.maxNumbers);
+						end = this.lattice.estimate(planned) + (planned == this.maxNumbers ? this.lattice.width(planned) : 0);
+					} else {
+						planned += numbersFrom(planned);
+						end = Math.max(this.lattice.estimate(planned), lo + this.lattice.width(planned));
+					}
+					final double hi = end;
+					final long numbers = planned - from;
+					window.add(this.pool.submit(() -> segment(lo, hi, numbers)));
+				}
+				written += window.remove().join().writeTo(sink, this.maxNumbers - written);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for (ForkJoinTask<Segment> task : window) task.cancel(false);
+		}
+	}
+
+	/*
+	 * the numbers of the segment that starts at rank: segmentNumbers, or fewer when their digits would
+	 * take more than SEGMENT_BITS, judged by the last of them
+	 */
+	private long numbersFrom(final long rank) {
+		final double bits = this.lattice.estimate(rank + this.segmentNumbers) / LN2;
+		return Math.max(1, Math.min(this.segmentNumbers, (long) (SEGMENT_BITS / bits)));
+	}
+
+	/* the numbers with logarithm from lo to hi in ascending order, once both are cleared; about numbers of them */
+	private Segment segment(final double lo, final double hi, final long numbers) {
+		final Segment segment = new Segment((int) numbers);
+		this.lattice.walk(this.lattice.clear(lo), this.lattice.clear(hi), segment::add, segment.big::add);
+		segment.sort();
+		return segment;
+	}
+
+	/*
+	 * the numbers of one segment: the ones that fit in a long, then every later one, each in ascending
+	 * order once sorted
+	 */
+	private static class Segment {
+		long[] small;
+		int smallCount;
+		final List<BigInteger> big = new ArrayList<>();
+
+		Segment(final int capacity) {
+			this.small = new long[Math.max(1, capacity)];
+		}
+
+		void add(final long value) {
+			if (this.smallCount == this.small.length) this.small = Arrays.copyOf(this.small, 2 * this.small.length);
+			this.small[this.smallCount++] = value;
+		}
+
+		void sort() {
+			Arrays.sort(this.small, 0, this.smallCount);
+			this.big.sort(null);
+		}
+
+		/* write at most limit numbers and return how many were written */
+		long writeTo(final HammingNetworkSink sink, final long limit) throws IOException {
+			final int smallCount = (int) Math.min(this.smallCount, limit);
+			sink.writeAll(this.small, 0, smallCount);
+			final int bigCount = (int) Math.min(this.big.size(), limit - smallCount);
+			for (int b = 0; b < bigCount; b++) sink.write(this.big.get(b));
+			return smallCount + bigCount;
+		}
+	}
+}
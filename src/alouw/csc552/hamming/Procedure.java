@@ -1,6 +1,16 @@
-package alouw.csc552.hamming;
-
-public interface Procedure {
-
-	public Integer apply(Integer value);
-}
\ No newline at end of file
+package alouw.csc552.hamming;
+
+import java.math.BigInteger;
+
+/*
+ * A function applied by a worker node. Values live in the primitive 64-bit domain until they no longer
+ * fit, after which they are carried as BigIntegers.
+ */
+public interface Procedure {
+
+	/* apply to a 64-bit value; throws ArithmeticException if the result does not fit in a long */
+	public long apply(long value);
+	
+	/* apply to a value past the 64-bit range */
+	public BigInteger apply(BigInteger value);
+}
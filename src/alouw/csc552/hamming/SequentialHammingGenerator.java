@@ -0,0 +1,150 @@
+package alouw.csc552.hamming;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/*
+ * The classic single-threaded generator: one index per prime into the numbers produced so far. The next
+ * number is the smallest product values[index_p] * p over all primes p; every index whose product equals 
+ * it then moves on by one, which also drops duplicates.
+ * 
+ * Numbers that fit in 64 bits are kept in a primitive long[] array. Past that range the generator 
+ * continues over BigIntegers and only keeps the window of numbers that some index can still reach, so 
+ * its memory tracks the frontier of the sequence rather than the whole prefix.
+ */
+public class SequentialHammingGenerator implements HammingGenerator {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final long maxNumbers;
+	private final long[] primes;
+	private final HammingNetworkSink sink;
+	
+	public SequentialHammingGenerator(final long threshold, final List<Long> primes) {
+		this(threshold, primes, HammingNetworkSinkFactory.CONSOLE_SINK.getInstance(null));
+	}
+	
+	/* start writes the numbers to sink and closes it */
+	public SequentialHammingGenerator(final long threshold, final List<Long> primes, final HammingNetworkSink sink) {
+		HammingGeneratorFactory.checkPrimes(primes);
+		this.maxNumbers = threshold;
+		this.sink = sink;
+		this.primes = new long[primes.size()];
+		for (int p = 0; p < this.primes.length; p++) this.primes[p] = primes.get(p).longValue();
+	}
+	
+	@Override
+	public void start() {
+		try (HammingNetworkSink sink = this.sink) {
+			generate(value -> {
+				try {
+					sink.write(value);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, value -> {
+				try {
+					sink.write(value);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/*
+	 * Generate the configured numbers in ascending order: the ones that fit in a long go to smallValues,
+	 * every later one to bigValues.
+	 */
+	public void generate(final LongConsumer smallValues, final Consumer<BigInteger> bigValues) {
+		if (this.maxNumbers < 1) return;
+		
+		final int k = this.primes.length;
+		final int[] index = new int[k];
+		final long[] candidates = this.primes.clone();
+		
+		long[] values = new long[(int) Math.min(this.maxNumbers, INITIAL_CAPACITY)];
+		values[0] = 1;
+		int count = 1;
+		smallValues.accept(1);
+		
+		while (count < this.maxNumbers) {
+			long min = candidates[0];
+			for (int p = 1; p < k; p++) if (candidates[p] < min) min = candidates[p];
+			
+			// every candidate has left the 64-bit range
+			if (min == HammingNetworkLongChannel.OVERFLOW) break;
+			
+			if (count == values.length) values = Arrays.copyOf(values, (int) Math.min(this.maxNumbers, 2L * count));
+			values[count++] = min;
+			smallValues.accept(min);
+			
+			for (int p = 0; p < k; p++) {
+				if (candidates[p] == min) candidates[p] = multiply(values[++index[p]], this.primes[p]);
+			}
+		}
+		
+		if (count < this.maxNumbers) generateOverflow(values, count, index, bigValues);
+	}
+	
+	/* continue past the 64-bit range; index[p] is the number whose product with prime p overflowed */
+	private void generateOverflow(final long[] values, final int valuesCount, final int[] index, 
+			final Consumer<BigInteger> bigValues) {
+		
+		final int k = this.primes.length;
+		final BigInteger[] bigPrimes = new BigInteger[k];
+		final BigInteger[] candidates = new BigInteger[k];
+		final long[] bigIndex = new long[k];
+		for (int p = 0; p < k; p++) {
+			bigPrimes[p] = BigInteger.valueOf(this.primes[p]);
+			bigIndex[p] = index[p];
+			candidates[p] = BigInteger.valueOf(values[index[p]]).multiply(bigPrimes[p]);
+		}
+		
+		// tail.get(i) is number (tailBase + i) of the sequence
+		final List<BigInteger> tail = new ArrayList<>();
+		long tailBase = valuesCount;
+		
+		for (long count = valuesCount; count < this.maxNumbers; count++) {
+			BigInteger min = candidates[0];
+			for (int p = 1; p < k; p++) if (candidates[p].compareTo(min) < 0) min = candidates[p];
+			
+			tail.add(min);
+			bigValues.accept(min);
+			
+			long lowest = Long.MAX_VALUE;
+			for (int p = 0; p < k; p++) {
+				if (candidates[p].equals(min)) {
+					final long next = ++bigIndex[p];
+					final BigInteger value = next < valuesCount 
+							? BigInteger.valueOf(values[(int) next]) : tail.get((int) (next - tailBase));
+					candidates[p] = value.multiply(bigPrimes[p]);
+				}
+				lowest = Math.min(lowest, bigIndex[p]);
+			}
+			
+			// drop the numbers no index can reach any more, once they make up half the window
+			final long unreachable = lowest - tailBase;
+			if (unreachable > 0 && unreachable > tail.size() / 2) {
+				tail.subList(0, (int) unreachable).clear();
+				tailBase = lowest;
+			}
+		}
+	}
+	
+	private static long multiply(final long value, final long prime) {
+		try {
+			return Math.multiplyExact(value, prime);
+		} catch (ArithmeticException e) {
+			return HammingNetworkLongChannel.OVERFLOW;
+		}
+	}
+}
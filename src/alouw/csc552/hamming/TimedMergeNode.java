@@ -0,0 +1,6 @@
+package alouw.csc552.hamming;
+
+/* a merge node that records the latency of its merge steps */
+interface TimedMergeNode {
+	public LatencyHistogram getMergeSteps();
+}
@@ -0,0 +1,121 @@
+package alouw.csc552.hamming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Every engine must generate the same numbers for the same primes, and every engine must refuse
+ * factors it would count wrongly: with {2, 4} the lattice-based engines see 4 = 2^2 = 4^1 twice.
+ *
+ * The cached engine's default file is the one Main reads and extends, so the cached engine is checked
+ * on a file of its own in a temporary directory.
+ */
+class HammingGeneratorFactoryTest {
+
+	private static final List<Long> COMPOSITE = List.of(2L, 4L);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void everyEngineRejectsCompositeFactors() {
+		for (HammingGeneratorFactory engine : HammingGeneratorFactory.values()) {
+			assertThrows(IllegalArgumentException.class, () -> generate(engine, 8, COMPOSITE), engine.name());
+			assertThrows(IllegalArgumentException.class, () -> generate(engine, 8, List.of(2L, 3L, 9L)), engine.name());
+		}
+	}
+
+	@Test
+	void checkPrimesRejectsCompositeFactors() {
+		assertThrows(IllegalArgumentException.class, () -> HammingGeneratorFactory.checkPrimes(COMPOSITE));
+		assertThrows(IllegalArgumentException.class, () -> HammingGeneratorFactory.checkPrimes(List.of(6L, 35L)));
+		HammingGeneratorFactory.checkPrimes(List.of(2L, 3L, 5L, 7L, 11L));
+	}
+
+	@Test
+	void everyEngineGeneratesTheSameNumbers() {
+		for (List<Long> primes : List.of(List.of(2L, 3L), List.of(3L, 2L, 7L), HammingNetwork.DEFAULT_PRIMES)) {
+			// 20000 numbers of {2, 3, 5} run past the longs into the overflow lane
+			final List<BigInteger> expected = generate(HammingGeneratorFactory.SEQUENTIAL_ENGINE, 20000, primes);
+			for (HammingGeneratorFactory engine : HammingGeneratorFactory.values()) {
+				if (engine == HammingGeneratorFactory.CACHED_ENGINE) continue;
+				assertEquals(expected, generate(engine, 20000, primes), engine.name() + " " + primes);
+			}
+		}
+	}
+
+	@Test
+	void parallelEngineGeneratesSparseSegments() {
+		// ten primes: a segment walks more rows than SEGMENT_NUMBERS, so it is sized to the rows
+		final List<Long> many = List.of(2L, 3L, 5L, 7L, 11L, 13L, 17L, 19L, 23L, 29L);
+		assertTrue(ParallelHammingGenerator.segmentNumbers(new HammingLattice(many), 500000)
+				> ParallelHammingGenerator.SEGMENT_NUMBERS);
+		assertEquals(generate(HammingGeneratorFactory.SEQUENTIAL_ENGINE, 500000, many),
+				generate(HammingGeneratorFactory.PARALLEL_ENGINE, 500000, many), many.toString());
+
+		// one prime: every row is one segment, and the numbers are so long that a segment holds few of them
+		final List<Long> one = List.of(7L);
+		assertEquals(generate(HammingGeneratorFactory.SEQUENTIAL_ENGINE, 20000, one),
+				generate(HammingGeneratorFactory.PARALLEL_ENGINE, 20000, one), one.toString());
+	}
+
+	@Test
+	void cachedEngineGeneratesTheSameNumbers() {
+		for (List<Long> primes : List.of(List.of(2L, 3L), List.of(3L, 2L, 7L), HammingNetwork.DEFAULT_PRIMES)) {
+			final Path cache = this.directory.resolve(CachedHammingGenerator.cacheFile(primes).getFileName());
+			final List<BigInteger> expected = generate(HammingGeneratorFactory.SEQUENTIAL_ENGINE, 20000, primes);
+			// a new file, a file extended past the longs, then a whole file and a prefix of it replayed
+			assertEquals(expected.subList(0, 1000), cached(cache, 1000, primes), "cold " + primes);
+			assertEquals(expected, cached(cache, 20000, primes), "extended " + primes);
+			assertEquals(expected, cached(cache, 20000, primes), "warm " + primes);
+			assertEquals(expected.subList(0, 1000), cached(cache, 1000, primes), "prefix " + primes);
+		}
+	}
+
+	private static List<BigInteger> generate(final HammingGeneratorFactory engine, final long threshold,
+			final List<Long> primes) {
+		final ListSink sink = new ListSink();
+		engine.getInstance(threshold, 1, TimeUnit.MINUTES, HammingNetwork.DEFAULT_BATCH_SIZE,
+				HammingNetworkExecutionMode.PLATFORM_THREADS, primes, sink).start();
+		return sink.numbers;
+	}
+
+	private static List<BigInteger> cached(final Path cache, final long threshold, final List<Long> primes) {
+		final ListSink sink = new ListSink();
+		new CachedHammingGenerator(cache, threshold, primes, sink).start();
+		return sink.numbers;
+	}
+
+	/* keeps every number written to it */
+	private static class ListSink implements HammingNetworkSink {
+		final List<BigInteger> numbers = new ArrayList<>();
+
+		@Override
+		public void write(final long value) {
+			this.numbers.add(BigInteger.valueOf(value));
+		}
+
+		@Override
+		public void write(final BigInteger value) {
+			this.numbers.add(value);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
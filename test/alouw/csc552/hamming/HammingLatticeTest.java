@@ -0,0 +1,60 @@
+package alouw.csc552.hamming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The lattice answers must match the numbers enumerated directly, and factors that share a divisor
+ * must be refused rather than counted twice.
+ */
+class HammingLatticeTest {
+
+	@Test
+	void rejectsFactorsThatShareADivisor() {
+		assertThrows(IllegalArgumentException.class, () -> new HammingLattice(List.of(2L, 4L)));
+		assertThrows(IllegalArgumentException.class, () -> new HammingLattice(List.of(6L, 10L, 7L)));
+		assertThrows(IllegalArgumentException.class, () -> new HammingLattice(List.of(3L, 3L)));
+		assertThrows(IllegalArgumentException.class, () -> new HammingLattice(List.of()));
+	}
+
+	@Test
+	void answersMatchTheEnumeratedNumbers() {
+		for (List<Long> factors : List.of(HammingNetwork.DEFAULT_PRIMES, List.of(4L, 9L), List.of(7L, 2L, 3L))) {
+			final HammingLattice lattice = new HammingLattice(factors);
+			final List<BigInteger> numbers = enumerate(factors, BigInteger.valueOf(1_000_000));
+			for (int n = 1; n <= numbers.size(); n++) {
+				assertEquals(numbers.get(n - 1), lattice.nth(n), factors + " nth " + n);
+				assertEquals(n, lattice.countUpTo(numbers.get(n - 1)), factors + " count " + numbers.get(n - 1));
+			}
+
+			final List<Long> range = new ArrayList<>();
+			lattice.range(1000, 100_000, range::add);
+			final List<Long> expected = new ArrayList<>();
+			for (BigInteger number : numbers) {
+				if (number.longValue() >= 1000 && number.longValue() <= 100_000) expected.add(number.longValue());
+			}
+			assertEquals(expected, range, factors + " range");
+		}
+	}
+
+	/* every product of the factors up to max, in ascending order */
+	private static List<BigInteger> enumerate(final List<Long> factors, final BigInteger max) {
+		final TreeSet<BigInteger> numbers = new TreeSet<>(List.of(BigInteger.ONE));
+		for (Long factor : factors) {
+			for (BigInteger number : new ArrayList<>(numbers)) {
+				for (BigInteger product = number.multiply(BigInteger.valueOf(factor)); product.compareTo(max) <= 0;
+						product = product.multiply(BigInteger.valueOf(factor))) {
+					numbers.add(product);
+				}
+			}
+		}
+		return new ArrayList<>(numbers);
+	}
+}
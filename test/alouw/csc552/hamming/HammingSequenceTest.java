@@ -0,0 +1,82 @@
+package alouw.csc552.hamming;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The view must hold the same numbers as the sequential engine, sequentially or in parallel, and a
+ * view of the default primes must split, or .parallel() runs on one thread. A threshold past the
+ * numbers that fit in a long is cut down to them.
+ */
+class HammingSequenceTest {
+
+	@Test
+	void defaultPrimesSplit() {
+		final HammingSequence sequence = new HammingSequence(Long.MAX_VALUE);
+		assertEquals(12691, sequence.size());
+
+		final Spliterator.OfLong suffix = sequence.spliterator();
+		final Spliterator.OfLong prefix = suffix.trySplit();
+		assertNotNull(prefix, "a view of " + sequence.size() + " numbers did not split");
+		assertEquals(sequence.size(), prefix.estimateSize() + suffix.estimateSize());
+		assertTrue(prefix.estimateSize() >= HammingSequence.MIN_SPLIT_NUMBERS);
+	}
+
+	@Test
+	void thresholdIsCutDownToTheLongs() {
+		for (List<Long> primes : List.of(HammingNetwork.DEFAULT_PRIMES, List.of(7L), List.of(2L, 3L, 5L, 7L, 11L))) {
+			final long longs = new HammingLattice(primes).countUpTo(Long.MAX_VALUE - 1);
+			assertEquals(longs, new HammingSequence(Long.MAX_VALUE, primes).size(), primes + " past the longs");
+			assertEquals(longs, new HammingSequence(longs + 1, primes).size(), primes + " one past the longs");
+			assertEquals(longs, new HammingSequence(longs, primes).stream().count(), primes + " streamed");
+			assertEquals(longs - 1, new HammingSequence(longs - 1, primes).size(), primes + " within the longs");
+		}
+		assertEquals(0, new HammingSequence(-1).size());
+	}
+
+	@Test
+	void matchesTheSequentialEngine() {
+		for (List<Long> primes : List.of(HammingNetwork.DEFAULT_PRIMES, List.of(2L, 3L), List.of(2L, 3L, 5L, 7L, 11L))) {
+			final HammingSequence sequence = new HammingSequence(Long.MAX_VALUE, primes);
+			final long[] expected = sequential(sequence.size(), primes);
+			assertArrayEquals(expected, sequence.stream().toArray(), primes + " sequential");
+			assertArrayEquals(expected, sequence.stream().parallel().toArray(), primes + " parallel");
+		}
+	}
+
+	private static long[] sequential(final long threshold, final List<Long> primes) {
+		final List<Long> numbers = new ArrayList<>();
+		HammingGeneratorFactory.SEQUENTIAL_ENGINE.getInstance(threshold, 1, TimeUnit.MINUTES,
+				HammingNetwork.DEFAULT_BATCH_SIZE, HammingNetworkExecutionMode.PLATFORM_THREADS, primes,
+				new HammingNetworkSink() {
+					@Override
+					public void write(final long value) {
+						numbers.add(value);
+					}
+
+					@Override
+					public void write(final BigInteger value) {
+						throw new AssertionError("The view only holds numbers that fit in a long: " + value);
+					}
+
+					@Override
+					public void flush() {
+					}
+
+					@Override
+					public void close() {
+					}
+				}).start();
+		return numbers.stream().mapToLong(Long::longValue).toArray();
+	}
+}